@@ -49,8 +49,10 @@ import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.Core
 import org.digimead.tabuddy.desktop.core.console.Console
+import org.digimead.tabuddy.desktop.core.keyring.generator.{ Generator, Pool }
 import org.digimead.tabuddy.desktop.core.keyring.random.SimpleRandom
 import org.digimead.tabuddy.desktop.core.keyring.random.api.XSecureRandom
+import org.digimead.tabuddy.desktop.core.keyring.storage.Storage
 import org.digimead.tabuddy.desktop.core.support.App
 import org.digimead.tabuddy.desktop.core.support.Timeout
 import org.eclipse.core.internal.resources.ResourceException
@@ -158,6 +160,10 @@ class KeyRing extends akka.actor.Actor with XLoggable {
       KeyRing.actor
       val context = thisBundle.getBundleContext()
       openContainer()
+      // Start pre-generation of the default key pairs
+      Pool.start()
+      Generator.default
+      command.Commands.configure()
       Console ! Console.Message.Notice("KeyRing component is started.")
       self ! App.Message.Consistent(KeyRing, None)
     }
@@ -168,6 +174,11 @@ class KeyRing extends akka.actor.Actor with XLoggable {
     App.watch(KeyRing) off {
       self ! App.Message.Inconsistent(KeyRing, None)
       val context = thisBundle.getBundleContext()
+      KeyRing.privateKeyWipe()
+      command.Commands.unconfigure()
+      Pool.statistics().foreach(statistics ⇒ log.debug("Key pair pool " + statistics))
+      Pool.stop()
+      try Storage.flush() catch { case e: Throwable ⇒ log.error("Unable to flush keys: " + e.getMessage(), e) }
       closeContainer()
       val lost = inconsistentSet - KeyRing
       if (lost.nonEmpty)
@@ -214,6 +225,8 @@ object KeyRing {
   def defaultPassPhrase = DI.defaultPassPhrase
   /** KeyRing implementation. */
   def inner(): Implementation = DI.implementation
+  /** Get unlocked private key idle timeout (in seconds). */
+  def privateKeyTTL = DI.privateKeyTTL
   /** Get public keyring resource name. */
   def publicKeyRingName = DI.publicKeyRingName
   /** Get random implementation. */
@@ -264,6 +277,8 @@ object KeyRing {
     lazy val infrastructureWideProjectName = injectOptional[String]("KeyRing.Container") getOrElse "org.digimead.tabuddy.desktop.core.keyring"
     /** KeyRing implementation. */
     lazy val implementation = injectOptional[Implementation] getOrElse new Implementation
+    /** Unlocked private key idle timeout (in seconds). */
+    lazy val privateKeyTTL = injectOptional[Long]("KeyRing.PrivateKey.TTL") getOrElse 300L // 5m
     /** KeyRing actor reference configuration object. */
     lazy val props = injectOptional[Props]("KeyRing") getOrElse Props[KeyRing]
     /** Public keyring resource name. */
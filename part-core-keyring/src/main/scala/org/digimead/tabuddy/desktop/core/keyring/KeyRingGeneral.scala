@@ -43,8 +43,12 @@
 
 package org.digimead.tabuddy.desktop.core.keyring
 
+import com.google.common.cache.CacheBuilder
+import com.google.common.util.concurrent.UncheckedExecutionException
 import java.io.{ ByteArrayInputStream, ByteArrayOutputStream }
+import java.security.MessageDigest
 import java.util.{ ArrayList, Date }
+import java.util.concurrent.{ Callable, ExecutionException, TimeUnit }
 import org.bouncycastle.bcpg.{ HashAlgorithmTags, PublicKeyAlgorithmTags, SymmetricKeyAlgorithmTags }
 import org.bouncycastle.bcpg.sig.{ Features, KeyFlags }
 import org.bouncycastle.openpgp.{ PGPKeyRingGenerator, PGPPrivateKey, PGPPublicKeyRingCollection, PGPSecretKey, PGPSecretKeyRingCollection, PGPSignature, PGPSignatureSubpacketGenerator }
@@ -67,6 +71,10 @@ trait KeyRingGeneral {
   protected val publicKeyRingCollectionLock = new Object
   /** SecretKeyRingCollection access lock. */
   protected val secretKeyRingCollectionLock = new Object
+  /** Unlocked private keys that are dropped after idle timeout. */
+  protected lazy val privateKeyCache = CacheBuilder.newBuilder().
+    expireAfterAccess(KeyRing.privateKeyTTL, TimeUnit.SECONDS).
+    build[KeyRingGeneral.PrivateKeyID, PGPPrivateKey]()
 
   /** Create new PGP keyring generator. */
   def createPGPKeyRingGenerator(userID: String): PGPKeyRingGenerator =
@@ -151,8 +159,19 @@ trait KeyRingGeneral {
   }
   /** Get private key from secret key. */
   def getPGPPrivateKey(secretKey: PGPSecretKey, passPhrase: String = KeyRing.defaultPassPhrase): PGPPrivateKey =
-    secretKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).
-      build(passPhrase.toCharArray()))
+    try privateKeyCache.get(KeyRingGeneral.PrivateKeyID(secretKey, passPhrase), new Callable[PGPPrivateKey] {
+      def call = secretKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).
+        build(passPhrase.toCharArray()))
+    }) catch {
+      case e: ExecutionException ⇒ throw e.getCause()
+      case e: UncheckedExecutionException ⇒ throw e.getCause()
+    }
+  /** Drop all unlocked private keys. */
+  def privateKeyWipe() {
+    log.debug("Wipe unlocked private keys.")
+    privateKeyCache.invalidateAll()
+    privateKeyCache.cleanUp()
+  }
   /** Get public key algorithm name. */
   def getPublicKeyAlgorithmName(key: Int) = key match {
     case PublicKeyAlgorithmTags.DIFFIE_HELLMAN ⇒ "Diffie Hellman"
@@ -238,3 +257,19 @@ trait KeyRingGeneral {
   def secretKeyRingCollection: PGPSecretKeyRingCollection =
     secretKeyRingCollectionLock.synchronized { actualSecretKeyRingCollection }
 }
+
+object KeyRingGeneral {
+  /**
+   * Unlocked private key identifier.
+   * The pass phrase is kept only as a part of the digest.
+   */
+  case class PrivateKeyID(val keyID: Long, val digest: Seq[Byte])
+  object PrivateKeyID {
+    def apply(secretKey: PGPSecretKey, passPhrase: String): PrivateKeyID = {
+      val digest = MessageDigest.getInstance("SHA-256")
+      digest.update(secretKey.getEncoded())
+      digest.update(passPhrase.getBytes(io.Codec.UTF8.charSet))
+      PrivateKeyID(secretKey.getKeyID(), digest.digest().toSeq)
+    }
+  }
+}
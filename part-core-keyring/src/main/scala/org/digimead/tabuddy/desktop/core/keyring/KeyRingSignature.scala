@@ -45,7 +45,7 @@ package org.digimead.tabuddy.desktop.core.keyring
 
 import org.bouncycastle.bcpg.HashAlgorithmTags
 import org.bouncycastle.openpgp.{ PGPPublicKey, PGPSecretKey, PGPSignature, PGPSignatureGenerator, PGPSignatureSubpacketGenerator }
-import org.bouncycastle.openpgp.operator.bc.{ BcPBESecretKeyDecryptorBuilder, BcPGPContentSignerBuilder, BcPGPContentVerifierBuilderProvider, BcPGPDigestCalculatorProvider }
+import org.bouncycastle.openpgp.operator.bc.{ BcPGPContentSignerBuilder, BcPGPContentVerifierBuilderProvider }
 import org.digimead.digi.lib.log.api.XLoggable
 import scala.collection.JavaConverters.asScalaIteratorConverter
 
@@ -61,7 +61,7 @@ trait KeyRingSignature {
     isHumanReadable: Boolean = true, signatureType: Int = PGPSignature.DEFAULT_CERTIFICATION): PGPPublicKey = {
     if (!masterKeyToBeSigned.isMasterKey())
       throw new IllegalArgumentException("Argument is not a master key.")
-    val pgpPrivKey = secretKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).build(secretKeyPass.toCharArray()))
+    val pgpPrivKey = getPGPPrivateKey(secretKey, secretKeyPass)
     val sGen = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(secretKey.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA1).setSecureRandom(KeyRing.random))
     sGen.init(signatureType, pgpPrivKey)
     hashedSPG.foreach(spg ⇒ sGen.setHashedSubpackets(spg.generate))
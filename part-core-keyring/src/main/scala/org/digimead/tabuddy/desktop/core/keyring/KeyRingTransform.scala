@@ -43,19 +43,24 @@
 
 package org.digimead.tabuddy.desktop.core.keyring
 
-import java.io.{ ByteArrayOutputStream, IOException }
+import java.io.{ ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream, FilterInputStream, FilterOutputStream, IOException, InputStream, OutputStream }
+import java.security.MessageDigest
 import org.bouncycastle.bcpg.{ PublicKeyAlgorithmTags, RSAPublicBCPGKey, RSASecretBCPGKey }
 import org.bouncycastle.crypto.{ AsymmetricBlockCipher, CipherParameters, InvalidCipherTextException }
+import org.bouncycastle.crypto.digests.SHA256Digest
 import org.bouncycastle.crypto.encodings.PKCS1Encoding
-import org.bouncycastle.crypto.engines.{ ElGamalEngine, RSAEngine }
-import org.bouncycastle.crypto.params.{ ParametersWithRandom, RSAKeyParameters, RSAPrivateCrtKeyParameters }
+import org.bouncycastle.crypto.engines.{ AESEngine, ElGamalEngine, RSAEngine }
+import org.bouncycastle.crypto.macs.HMac
+import org.bouncycastle.crypto.params.{ KeyParameter, ParametersWithRandom, RSAKeyParameters, RSAPrivateCrtKeyParameters }
 import org.bouncycastle.openpgp.{ PGPPrivateKey, PGPPublicKey, PGPSecretKey }
-import org.bouncycastle.openpgp.operator.bc.{ BcPBESecretKeyDecryptorBuilder, BcPGPDigestCalculatorProvider }
+import org.digimead.digi.lib.log.api.XLoggable
 
 /**
  * Signature part for data transformation.
  */
 trait KeyRingTransform {
+  this: KeyRing.Implementation with XLoggable ⇒
+
   /** Get an encryptor for the public key. */
   def encrypt(publicKey: PGPPublicKey): KeyRing.Encryptor = publicKey.getAlgorithm() match {
     case PublicKeyAlgorithmTags.RSA_ENCRYPT ⇒
@@ -79,8 +84,16 @@ trait KeyRingTransform {
   }
   /** Get a decryptor for the secret key. */
   def decrypt(secretKey: PGPSecretKey, passPhrase: String = KeyRing.defaultPassPhrase): KeyRing.Decryptor =
-    decrypt(secretKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).
-      build(passPhrase.toCharArray())))
+    decrypt(getPGPPrivateKey(secretKey, passPhrase))
+  /** Get a hybrid decryptor for the secret key. */
+  def decryptHybrid(secretKey: PGPSecretKey, passPhrase: String = KeyRing.defaultPassPhrase): KeyRingTransform.HybridDecryptor =
+    new KeyRingTransform.HybridDecryptor(decrypt(secretKey, passPhrase))
+  /** Get a hybrid decryptor for the private key. */
+  def decryptHybrid(privateKey: PGPPrivateKey): KeyRingTransform.HybridDecryptor =
+    new KeyRingTransform.HybridDecryptor(decrypt(privateKey))
+  /** Get a hybrid encryptor for the public key. */
+  def encryptHybrid(publicKey: PGPPublicKey): KeyRingTransform.HybridEncryptor =
+    new KeyRingTransform.HybridEncryptor(encrypt(publicKey))
   /** Get a decryptor for the private key. */
   def decrypt(privateKey: PGPPrivateKey): KeyRing.Decryptor = privateKey.getPublicKeyPacket().getAlgorithm() match {
     case PublicKeyAlgorithmTags.RSA_ENCRYPT ⇒
@@ -105,6 +118,13 @@ trait KeyRingTransform {
 }
 
 object KeyRingTransform {
+  /** Hybrid envelope format version. */
+  val hybridVersion = 1
+  /** Size of the hybrid envelope session keys. */
+  val hybridKeySize = 32
+  /** Maximum size of the wrapped session keys. */
+  val hybridWrappedKeyLimit = 65536
+
   /** Decrypt payload with cipher. */
   def decrypt(cipher: AsymmetricBlockCipher, in: Array[Byte], inOff: Int, len: Int,
     inputBlockSize: Int, outputBlockSize: Int): Array[Byte] = {
@@ -245,4 +265,211 @@ object KeyRingTransform {
       KeyRingTransform.decrypt(cipher, source, 0, source.size,
         cipher.getInputBlockSize(), cipher.getOutputBlockSize()): Array[Byte]
   }
+  /**
+   * AES in counter mode.
+   */
+  class CTR(key: Array[Byte], iv: Array[Byte]) {
+    /** Block cipher. */
+    protected val engine = {
+      val engine = new AESEngine()
+      engine.init(true, new KeyParameter(key))
+      engine
+    }
+    /** Counter block. */
+    protected val counter = iv.clone()
+    /** Key stream block. */
+    protected val keyStream = new Array[Byte](engine.getBlockSize())
+    /** Position in the key stream block. */
+    protected var position = keyStream.length
+
+    /** Encrypt or decrypt bytes in place. */
+    def process(buffer: Array[Byte], offset: Int, length: Int) {
+      var i = offset
+      while (i < offset + length) {
+        if (position == keyStream.length) {
+          engine.processBlock(counter, 0, keyStream, 0)
+          var j = counter.length - 1
+          counter(j) = (counter(j) + 1).toByte
+          while (counter(j) == 0 && j > 0) {
+            j -= 1
+            counter(j) = (counter(j) + 1).toByte
+          }
+          position = 0
+        }
+        buffer(i) = (buffer(i) ^ keyStream(position)).toByte
+        position += 1
+        i += 1
+      }
+    }
+  }
+  /**
+   * Hybrid decryptor.
+   * Unwraps the session keys with the asymmetric decryptor and decrypts the payload with AES/CTR.
+   */
+  class HybridDecryptor(unwrapper: KeyRing.Decryptor) extends KeyRing.Decryptor {
+    def apply(source: Array[Byte]): Array[Byte] = {
+      val input = this.input(new ByteArrayInputStream(source))
+      val output = new ByteArrayOutputStream(source.length)
+      val buffer = new Array[Byte](4096)
+      try {
+        var n = input.read(buffer)
+        while (n != -1) {
+          output.write(buffer, 0, n)
+          n = input.read(buffer)
+        }
+      } finally input.close()
+      output.toByteArray()
+    }
+    /**
+     * Get a stream with plain data.
+     * The payload is authenticated at the end of the stream, so the result is valid only after EOF is reached without exception.
+     */
+    def input(in: InputStream): InputStream = {
+      val data = new DataInputStream(in)
+      val version = data.read()
+      if (version != hybridVersion)
+        throw new IOException("Unexpected hybrid envelope version " + version)
+      val wrappedLength = data.readInt()
+      if (wrappedLength <= 0 || wrappedLength > hybridWrappedKeyLimit)
+        throw new IOException("Unexpected hybrid envelope key length " + wrappedLength)
+      val wrapped = new Array[Byte](wrappedLength)
+      data.readFully(wrapped)
+      val keys = unwrapper(wrapped)
+      if (keys.length != hybridKeySize * 2)
+        throw new InvalidCipherTextException("Unexpected hybrid envelope session key")
+      val mac = new HMac(new SHA256Digest())
+      mac.init(new KeyParameter(keys, hybridKeySize, hybridKeySize))
+      val iv = new Array[Byte](16)
+      data.readFully(iv)
+      mac.update(iv, 0, iv.length)
+      val tag = new Array[Byte](mac.getMacSize())
+      data.readFully(tag)
+      new HybridInputStream(data, new CTR(keys.take(hybridKeySize), iv), mac, tag)
+    }
+  }
+  /**
+   * Hybrid encryptor.
+   * Wraps random session keys with the asymmetric encryptor and encrypts the payload with AES/CTR.
+   * Envelope: version, wrapped keys length, wrapped keys, IV, encrypted payload, HMAC-SHA256 of IV and encrypted payload.
+   */
+  class HybridEncryptor(wrapper: KeyRing.Encryptor) extends KeyRing.Encryptor {
+    /** Apply transformation. */
+    def apply(source: Array[Byte]): Array[Byte] = {
+      val buffer = new ByteArrayOutputStream(source.length + 1024)
+      val output = this.output(buffer)
+      output.write(source)
+      output.close()
+      buffer.toByteArray()
+    }
+    /**
+     * Return the maximum size for an input block to this engine.
+     *
+     * @return maximum size for an input block.
+     */
+    def getInputBlockSize(): Int = Int.MaxValue
+    /** Get a stream that encrypts data to the specific output stream. */
+    def output(out: OutputStream): OutputStream = {
+      val keys = new Array[Byte](hybridKeySize * 2)
+      val iv = new Array[Byte](16)
+      KeyRing.random.nextBytes(keys)
+      KeyRing.random.nextBytes(iv)
+      val wrapped = wrapper(keys)
+      val data = new DataOutputStream(out)
+      data.write(hybridVersion)
+      data.writeInt(wrapped.length)
+      data.write(wrapped)
+      data.write(iv)
+      data.flush()
+      val mac = new HMac(new SHA256Digest())
+      mac.init(new KeyParameter(keys, hybridKeySize, hybridKeySize))
+      mac.update(iv, 0, iv.length)
+      new HybridOutputStream(out, new CTR(keys.take(hybridKeySize), iv), mac)
+    }
+  }
+  /**
+   * Input stream that decrypts the hybrid envelope payload.
+   * The last mac size bytes of the stream are the authentication tag, so they are always held back.
+   */
+  class HybridInputStream(input: InputStream, cipher: CTR, mac: HMac, initialTail: Array[Byte]) extends FilterInputStream(input) {
+    /** Held back bytes. */
+    protected val tail = initialTail
+    /** Read buffer. */
+    protected var buffer = new Array[Byte](4096 + tail.length)
+    /** End of stream flag. */
+    protected var eof = false
+
+    override def available() = 0
+    override def markSupported() = false
+    override def read(): Int = {
+      val single = new Array[Byte](1)
+      var n = read(single, 0, 1)
+      while (n == 0)
+        n = read(single, 0, 1)
+      if (n == -1) -1 else single(0) & 0xFF
+    }
+    override def read(b: Array[Byte], off: Int, len: Int): Int = if (eof) -1 else if (len == 0) 0 else {
+      if (buffer.length < len + tail.length)
+        buffer = new Array[Byte](len + tail.length)
+      val n = in.read(buffer, tail.length, len)
+      if (n == -1) {
+        eof = true
+        val expected = new Array[Byte](mac.getMacSize())
+        mac.doFinal(expected, 0)
+        if (!MessageDigest.isEqual(expected, tail))
+          throw new IOException("Hybrid envelope authentication failed")
+        -1
+      } else {
+        // buffer = tail ++ new bytes; emit the first n bytes, keep the last tail.length bytes
+        System.arraycopy(tail, 0, buffer, 0, tail.length)
+        mac.update(buffer, 0, n)
+        cipher.process(buffer, 0, n)
+        System.arraycopy(buffer, 0, b, off, n)
+        System.arraycopy(buffer, n, tail, 0, tail.length)
+        n
+      }
+    }
+    override def skip(n: Long): Long = {
+      val skipBuffer = new Array[Byte](math.min(n, 4096L).toInt)
+      var skipped = 0L
+      var count = 0
+      while (skipped < n && count != -1) {
+        count = read(skipBuffer, 0, math.min(n - skipped, skipBuffer.length.toLong).toInt)
+        if (count > 0)
+          skipped += count
+      }
+      skipped
+    }
+  }
+  /**
+   * Output stream that encrypts the hybrid envelope payload.
+   * The authentication tag is written on close.
+   */
+  class HybridOutputStream(output: OutputStream, cipher: CTR, mac: HMac) extends FilterOutputStream(output) {
+    /** Write buffer. */
+    protected val buffer = new Array[Byte](4096)
+    /** Closed flag. */
+    protected var closed = false
+
+    override def close() = if (!closed) {
+      closed = true
+      val tag = new Array[Byte](mac.getMacSize())
+      mac.doFinal(tag, 0)
+      out.write(tag)
+      out.close()
+    }
+    override def write(b: Int) = write(Array(b.toByte), 0, 1)
+    override def write(b: Array[Byte], off: Int, len: Int) {
+      if (closed)
+        throw new IOException("Stream is closed")
+      var offset = off
+      while (offset < off + len) {
+        val n = math.min(buffer.length, off + len - offset)
+        System.arraycopy(b, offset, buffer, 0, n)
+        cipher.process(buffer, 0, n)
+        mac.update(buffer, 0, n)
+        out.write(buffer, 0, n)
+        offset += n
+      }
+    }
+  }
 }
@@ -0,0 +1,214 @@
+/**
+ * This file is part of the TA Buddy project.
+ * Copyright (c) 2015 Alexey Aksenov ezh@ezh.msk.ru
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Global License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED
+ * BY Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS»,
+ * Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS» DISCLAIMS
+ * THE WARRANTY OF NON INFRINGEMENT OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Global License for more details.
+ * You should have received a copy of the GNU Affero General Global License
+ * along with this program; if not, see http://www.gnu.org/licenses or write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA, 02110-1301 USA, or download the license from the following URL:
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Global License.
+ *
+ * In accordance with Section 7(b) of the GNU Affero General Global License,
+ * you must retain the producer line in every report, form or document
+ * that is created or manipulated using TA Buddy.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the TA Buddy software without
+ * disclosing the source code of your own applications.
+ * These activities include: offering paid services to customers,
+ * serving files in a web or/and network application,
+ * shipping TA Buddy with a closed source product.
+ *
+ * For more information, please contact Digimead Team at this
+ * address: ezh@ezh.msk.ru
+ */
+
+package org.digimead.tabuddy.desktop.core.keyring.generator
+
+import java.util.concurrent.{ ConcurrentHashMap, LinkedBlockingQueue, RejectedExecutionException, ThreadFactory, ThreadPoolExecutor, TimeUnit }
+import java.util.concurrent.atomic.{ AtomicBoolean, AtomicInteger, AtomicLong }
+import org.bouncycastle.crypto.{ AsymmetricCipherKeyPair, AsymmetricCipherKeyPairGenerator, KeyGenerationParameters }
+import org.bouncycastle.crypto.params.RSAKeyGenerationParameters
+import org.digimead.digi.lib.api.XDependencyInjection
+import org.digimead.digi.lib.log.api.XLoggable
+import scala.collection.JavaConverters.{ collectionAsScalaIterableConverter, mapAsScalaConcurrentMapConverter }
+import scala.language.implicitConversions
+
+/**
+ * Pool of pre-generated asymmetric key pairs.
+ * The pool is refilled only between start() and stop().
+ */
+class Pool extends XLoggable {
+  /** Ready key pairs per generator configuration. */
+  protected val configurations = new ConcurrentHashMap[String, Pool.Configuration]().asScala
+  /** Low priority workers. */
+  @volatile protected var executor = Option.empty[ThreadPoolExecutor]
+  /** Synchronization lock. */
+  private val lock = new Object
+
+  /** Get pooled key pair generator for the specific configuration. Underlying generator must be initialized with parameters. */
+  def apply(configuration: String, parameters: KeyGenerationParameters)(underlying: ⇒ AsymmetricCipherKeyPairGenerator): AsymmetricCipherKeyPairGenerator = {
+    val pool = configurations.get(configuration) getOrElse {
+      val pool = new Pool.Configuration(configuration, parameters, underlying)
+      configurations.putIfAbsent(configuration, pool) getOrElse pool
+    }
+    refill(pool)
+    new Pool.Generator(pool, this)
+  }
+  /** Drop all ready key pairs. */
+  def clear() {
+    log.debug("Clear key pair pool.")
+    configurations.values.foreach(_.ready.clear())
+  }
+  /** Check whether the pool is refilled. */
+  def isStarted = executor.nonEmpty
+  /** Start workers and refill known configurations. */
+  def start() = lock.synchronized {
+    if (executor.isEmpty) {
+      log.debug("Start key pair pool.")
+      executor = Some(createExecutor())
+    }
+    configurations.values.foreach(refill)
+  }
+  /** Get pool statistics. */
+  def statistics(): Seq[Pool.Statistics] = configurations.values.toSeq.map(_.statistics).sortBy(_.configuration)
+  /** Stop workers and drop all ready key pairs. */
+  def stop() = lock.synchronized {
+    log.debug("Stop key pair pool.")
+    executor.foreach(_.shutdownNow())
+    executor = None
+    clear()
+  }
+
+  /** Create low priority workers. */
+  protected def createExecutor(): ThreadPoolExecutor = {
+    val executor = new ThreadPoolExecutor(Pool.threads, Pool.threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue[Runnable](), new ThreadFactory {
+        val counter = new AtomicInteger()
+        def newThread(runnable: Runnable) = {
+          val thread = new Thread(runnable, "KeyRing key pair pool #" + counter.incrementAndGet())
+          thread.setDaemon(true)
+          thread.setPriority(Thread.MIN_PRIORITY)
+          thread
+        }
+      })
+    executor.allowCoreThreadTimeOut(true)
+    executor
+  }
+  /** Schedule generation of missing key pairs. Do nothing if the pool is stopped. */
+  protected[generator] def refill(pool: Pool.Configuration) = executor.foreach { executor ⇒
+    if (pool.ready.size < Pool.size && pool.refilling.compareAndSet(false, true))
+      try executor.execute(new Runnable {
+        def run = try {
+          while (pool.ready.size < Pool.size && isCurrent(executor)) {
+            val pair = pool.underlying.synchronized { pool.underlying.generateKeyPair() }
+            pool.generated.incrementAndGet()
+            // Drop the key pair if the pool was stopped while generating.
+            lock.synchronized { if (isCurrent(executor)) pool.ready.offer(pair) }
+          }
+          log.debug(s"Key pair pool is ready: ${pool.statistics}.")
+        } catch {
+          case e: Throwable ⇒ log.error(s"Unable to generate key pair for ${pool.configuration}: " + e.getMessage(), e)
+        } finally pool.refilling.set(false)
+      }) catch {
+        case e: RejectedExecutionException ⇒ pool.refilling.set(false) // the pool is stopped
+      }
+  }
+  /** Check whether the executor is not stopped. */
+  protected def isCurrent(executor: ThreadPoolExecutor) = this.executor.exists(_ eq executor) && !executor.isShutdown()
+}
+
+object Pool {
+  implicit def pool2implementation(p: Pool.type): Pool = p.inner
+
+  /** Get Pool implementation. */
+  def inner = DI.implementation
+  /** Get number of ready key pairs per configuration. */
+  def size = DI.size
+  /** Get number of worker threads. */
+  def threads = DI.threads
+
+  /** Check whether key pairs generated with both parameters are interchangeable. The source of randomness is not compared. */
+  def isCompatible(a: KeyGenerationParameters, b: KeyGenerationParameters): Boolean = (a, b) match {
+    case (a: RSAKeyGenerationParameters, b: RSAKeyGenerationParameters) ⇒
+      a.getStrength() == b.getStrength() && a.getPublicExponent() == b.getPublicExponent() && a.getCertainty() == b.getCertainty()
+    case (a, b) ⇒
+      a.getClass() == b.getClass() && a.getStrength() == b.getStrength()
+  }
+
+  /**
+   * Ready key pairs of the specific generator configuration.
+   */
+  class Configuration(val configuration: String, val parameters: KeyGenerationParameters, val underlying: AsymmetricCipherKeyPairGenerator) {
+    /** Number of generated key pairs. */
+    val generated = new AtomicLong()
+    /** Number of key pairs that are generated by the caller. */
+    val missed = new AtomicLong()
+    /** Ready key pairs. */
+    val ready = new LinkedBlockingQueue[AsymmetricCipherKeyPair]()
+    /** Flag indicating whether the worker is generating key pairs. */
+    val refilling = new AtomicBoolean()
+    /** Number of key pairs that are taken from the pool. */
+    val served = new AtomicLong()
+
+    /** Get configuration statistics. */
+    def statistics = Statistics(configuration, ready.size(), generated.get(), served.get(), missed.get())
+  }
+  /**
+   * Key pair generator that takes key pairs from the pool.
+   */
+  class Generator(pool: Configuration, parent: Pool) extends AsymmetricCipherKeyPairGenerator {
+    /** Generate a new key pair or take a ready one. */
+    def generateKeyPair(): AsymmetricCipherKeyPair = {
+      val pair = Option(pool.ready.poll()) match {
+        case Some(pair) ⇒
+          pool.served.incrementAndGet()
+          pair
+        case None ⇒
+          pool.missed.incrementAndGet()
+          pool.underlying.synchronized { pool.underlying.generateKeyPair() }
+      }
+      parent.refill(pool)
+      pair
+    }
+    /** Pooled generator is already initialized. Do nothing if parameters are the same as the pool ones. */
+    def init(param: KeyGenerationParameters) =
+      if (!Pool.isCompatible(pool.parameters, param))
+        throw new IllegalStateException(s"Pooled key pair generator ${pool.configuration} is already initialized with other parameters.")
+  }
+  /**
+   * Pool statistics of the specific generator configuration.
+   */
+  case class Statistics(configuration: String, ready: Int, generated: Long, served: Long, missed: Long) {
+    override def toString = s"${configuration}: ready ${ready}, generated ${generated}, served ${served}, missed ${missed}"
+  }
+  /**
+   * Dependency injection routines.
+   */
+  private object DI extends XDependencyInjection.PersistentInjectable {
+    /** Pool implementation. */
+    lazy val implementation = injectOptional[Pool] getOrElse new Pool
+    /** Number of ready key pairs per configuration. */
+    lazy val size = injectOptional[Int]("KeyRing.Generator.Pool.Size") getOrElse 2
+    /** Number of worker threads. */
+    lazy val threads = injectOptional[Int]("KeyRing.Generator.Pool.Threads") getOrElse 1
+  }
+}
@@ -69,7 +69,8 @@ class RSAGenerator extends Generator with XLoggable {
   def apply(args: AnyRef*): XGenerator.AsymmetricCipherKeyPairGenerator = args match {
     case Seq(strength: Integer) ⇒
       if (strength == 1024 || strength == 2048 || strength == 4096)
-        XGenerator.AsymmetricCipherKeyPairGenerator(signAlgorithm, encAlgorithm, createACKPGenerator(strength))
+        XGenerator.AsymmetricCipherKeyPairGenerator(signAlgorithm, encAlgorithm,
+          Pool(s"${identifier.name}-${strength}", createACKPParameters(strength))(createACKPGenerator(strength)))
       else
         throw new IllegalArgumentException("Illegal key size argument (must be 1024, 2048 or 4096): " + args)
     case _ ⇒
@@ -78,9 +79,12 @@ class RSAGenerator extends Generator with XLoggable {
   /** Create new PGP asymmetric cipher key pair generator. */
   def createACKPGenerator(strength: Int = 2048): AsymmetricCipherKeyPairGenerator = {
     val generator = new RSAKeyPairGenerator()
-    generator.init(new RSAKeyGenerationParameters(BigInteger.valueOf(0x10001), KeyRing.random, strength, 12))
+    generator.init(createACKPParameters(strength))
     generator
   }
+  /** Create parameters of PGP asymmetric cipher key pair generator. */
+  def createACKPParameters(strength: Int = 2048) =
+    new RSAKeyGenerationParameters(BigInteger.valueOf(0x10001), KeyRing.random, strength, 12)
 }
 
 object RSAGenerator {
@@ -43,19 +43,22 @@
 
 package org.digimead.tabuddy.desktop.core.keyring.storage
 
-import java.io.{ IOException, PipedInputStream, PipedOutputStream }
+import com.google.common.cache.CacheBuilder
+import java.io.{ ByteArrayInputStream, ByteArrayOutputStream, IOException }
 import java.util.{ Properties, UUID }
-import java.util.concurrent.{ ConcurrentHashMap, CountDownLatch, TimeUnit }
+import java.util.concurrent.{ ConcurrentHashMap, TimeUnit }
+import java.util.concurrent.atomic.AtomicBoolean
 import org.bouncycastle.openpgp.PGPPublicKey
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.keyring.KeyRing
 import org.digimead.tabuddy.desktop.core.keyring.storage.api.XStorage
-import org.digimead.tabuddy.desktop.core.support.{ App, Timeout }
-import org.eclipse.core.resources.IFile
-import org.eclipse.core.runtime.NullProgressMonitor
-import scala.collection.JavaConverters.mapAsScalaConcurrentMapConverter
-import scala.concurrent.{ Await, Future }
+import org.digimead.tabuddy.desktop.core.support.App
+import org.eclipse.core.resources.{ IFile, IResource, IWorkspace, IWorkspaceRunnable, ResourcesPlugin }
+import org.eclipse.core.runtime.{ IProgressMonitor, NullProgressMonitor }
+import scala.collection.JavaConverters.{ asScalaSetConverter, mapAsScalaConcurrentMapConverter }
+import scala.collection.mutable
+import scala.concurrent.duration.{ Duration, FiniteDuration }
 import scala.language.implicitConversions
 
 /**
@@ -66,16 +69,57 @@ class Storage extends XLoggable {
   implicit lazy val ec = App.system.dispatcher
   /** Map of objects that are shared between key instances. */
   protected val shared = new ConcurrentHashMap[UUID, (PGPPublicKey, Properties)].asScala
+  /** Parsed keys with modification stamps of their files. */
+  protected val parsed = CacheBuilder.newBuilder().maximumSize(Storage.cacheSize).build[UUID, (Long, PGPPublicKey)]()
+  /** Keys that are waiting for write. */
+  protected val dirty = java.util.Collections.newSetFromMap(new ConcurrentHashMap[UUID, java.lang.Boolean]())
+  /** Flag indicating whether the flush is scheduled. */
+  protected val flushScheduled = new AtomicBoolean()
+  /** Flush lock. */
+  protected val flushLock = new Object
 
+  /**
+   * Write all pending keys within a single workspace operation.
+   * Keys that are failed stay pending until the next flush.
+   */
+  def flush(): Unit = flushLock.synchronized {
+    flushScheduled.set(false)
+    val ids = dirty.asScala.toList
+    if (ids.nonEmpty) {
+      ids.foreach(dirty.remove)
+      log.debug(s"Flush ${ids.size} key(s).")
+      val written = mutable.HashSet[UUID]()
+      val runnable = new IWorkspaceRunnable {
+        def run(monitor: IProgressMonitor) = ids.foreach { id ⇒
+          try {
+            write(id, monitor)
+            written += id
+          } catch {
+            case e: Throwable ⇒ log.error(s"Unable to save key ${id}: " + e.getMessage(), e)
+          }
+        }
+      }
+      try ResourcesPlugin.getWorkspace().run(runnable, Storage.container, IWorkspace.AVOID_UPDATE, new NullProgressMonitor())
+      finally ids.filterNot(written).foreach(dirty.add)
+    }
+  }
   /** Get key from shared map or load it from storage. */
   def getKey(id: UUID): PGPPublicKey = shared.get(id) match {
     case Some((key, properties)) ⇒
       key
     case None ⇒
       val keyFile = Storage.getKeyFile(id)
-      val stream = keyFile.getContents(true)
-      try KeyRing.importPGPPublicKey(stream)
-      finally try stream.close() catch { case e: Throwable ⇒ log.error(s"Unable to close stream for ${keyFile}: " + e.getMessage(), e) }
+      val stamp = keyFile.getModificationStamp()
+      Option(parsed.getIfPresent(id)) match {
+        case Some((cachedStamp, key)) if cachedStamp == stamp && stamp != IResource.NULL_STAMP ⇒
+          key
+        case _ ⇒
+          val stream = keyFile.getContents(true)
+          val key = try KeyRing.importPGPPublicKey(stream)
+          finally try stream.close() catch { case e: Throwable ⇒ log.error(s"Unable to close stream for ${keyFile}: " + e.getMessage(), e) }
+          parsed.put(id, (stamp, key))
+          key
+      }
   }
   /** Get or create properties container for the key. */
   def getProperty(id: UUID, key: Option[PGPPublicKey] = None): Properties =
@@ -122,60 +166,49 @@ class Storage extends XLoggable {
     }
   }
   /** Save keys. */
-  def save(): Unit = shared.synchronized {
-    val futures = shared.map { case (id, (key, properties)) ⇒ Future { save(id) } }
-    Await.result(Future.sequence(futures), Timeout.longer)
+  def save(): Unit = {
+    shared.keys.foreach(dirty.add)
+    flush()
+  }
+  /** Save key. Data is written by the write-behind flusher. */
+  def save(id: UUID): Unit = if (shared.contains(id)) {
+    dirty.add(id)
+    if (flushScheduled.compareAndSet(false, true))
+      App.system.scheduler.scheduleOnce(Storage.flushDelay) {
+        try flush() catch { case e: Throwable ⇒ log.error("Unable to flush keys: " + e.getMessage(), e) }
+      }
   }
-  /** Save key. */
-  def save(id: UUID): Unit = shared.get(id) foreach {
-    case (key, properties) ⇒
-      properties.synchronized {
-        log.debug(s"Save key ${id} data.")
-        val completionLatch = new CountDownLatch(2)
-        val propertiesFile = Storage.getPropertiesFile(id)
-        val keyFile = Storage.getKeyFile(id)
-        val progressMonitor = new NullProgressMonitor() {
-          override def done() = completionLatch.countDown()
-        }
 
-        // save properties
+  /** Write key data. */
+  protected def write(id: UUID, monitor: IProgressMonitor): Unit = shared.get(id) foreach {
+    case (key, properties) ⇒
+      log.debug(s"Save key ${id} data.")
+      val propertiesFile = Storage.getPropertiesFile(id)
+      val keyFile = Storage.getKeyFile(id)
+      // save properties
+      val propertiesContent = properties.synchronized {
         if (!propertiesFile.exists() || properties.getProperty("hashCode", "0").toInt != properties.##) {
-          log.debug("Save " + propertiesFile)
-          val in = new PipedInputStream()
-          val out = new PipedOutputStream(in)
-          Future {
-            if (!propertiesFile.exists())
-              propertiesFile.create(in, true, progressMonitor)
-            else
-              propertiesFile.setContents(in, true, true, progressMonitor)
-            in.close()
-          } onFailure { case e: Throwable ⇒ log.error("Error while saving properties: " + e.getMessage(), e) }
           properties.setProperty("hashCode", properties.##.toString())
-          try properties.store(out, id.toString())
-          finally try out.close() catch { case e: Throwable ⇒ log.error(s"Unable to close stream for ${propertiesFile}: " + e.getMessage(), e) }
-        } else {
-          completionLatch.countDown()
-        }
-
-        // save key
-        if (!keyFile.exists()) {
-          log.debug("Save " + keyFile)
-          val in = new PipedInputStream()
-          val out = new PipedOutputStream(in)
-          Future {
-            if (!keyFile.exists())
-              keyFile.create(in, true, progressMonitor)
-            else
-              keyFile.setContents(in, true, true, progressMonitor)
-            in.close()
-          } onFailure { case e: Throwable ⇒ log.error("Error while saving key: " + e.getMessage(), e) }
-          try KeyRing.export(key, out)
-          finally try out.close() catch { case e: Throwable ⇒ log.error(s"Unable to close stream for ${keyFile}: " + e.getMessage(), e) }
-        } else {
-          completionLatch.countDown()
-        }
-
-        completionLatch.await(Timeout.long.toMillis, TimeUnit.MILLISECONDS)
+          val out = new ByteArrayOutputStream()
+          properties.store(out, id.toString())
+          Some(out.toByteArray())
+        } else
+          None
+      }
+      propertiesContent.foreach { content ⇒
+        log.debug("Save " + propertiesFile)
+        if (!propertiesFile.exists())
+          propertiesFile.create(new ByteArrayInputStream(content), true, monitor)
+        else
+          propertiesFile.setContents(new ByteArrayInputStream(content), true, true, monitor)
+      }
+      // save key
+      if (!keyFile.exists()) {
+        log.debug("Save " + keyFile)
+        val out = new ByteArrayOutputStream()
+        KeyRing.export(key, out)
+        keyFile.create(new ByteArrayInputStream(out.toByteArray()), true, monitor)
+        parsed.put(id, (keyFile.getModificationStamp(), key))
       }
   }
 }
@@ -191,6 +224,10 @@ object Storage extends XLoggable {
     folder
   }
 
+  /** Get maximum number of parsed keys in cache. */
+  def cacheSize = DI.cacheSize
+  /** Get delay before write-behind flush. */
+  def flushDelay = DI.flushDelay
   /** Get file with key. */
   def getKeyFile(id: UUID): IFile = Storage.container.getFile(id.toString() + ".key")
   /** Get file with key meta information. */
@@ -243,6 +280,10 @@ object Storage extends XLoggable {
    * Dependency injection routines.
    */
   private object DI extends XDependencyInjection.PersistentInjectable {
+    /** Maximum number of parsed keys in cache. */
+    lazy val cacheSize = injectOptional[Int]("KeyRing.Storage.CacheSize") getOrElse 256
+    /** Delay before write-behind flush. */
+    lazy val flushDelay = injectOptional[FiniteDuration]("KeyRing.Storage.FlushDelay") getOrElse Duration(500, TimeUnit.MILLISECONDS)
     /** Storage implementation. */
     lazy val implementation = injectOptional[Storage] getOrElse new Storage()
     /**
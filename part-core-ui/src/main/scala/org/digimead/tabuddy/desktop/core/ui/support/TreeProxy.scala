@@ -50,7 +50,7 @@ import org.digimead.tabuddy.model.element.Element
 import org.digimead.tabuddy.model.graph.Node
 import org.eclipse.core.databinding.observable.list.{ WritableList ⇒ OriginalWritableList }
 import org.eclipse.jface.viewers.TreeViewer
-import scala.collection.{ mutable, parallel }
+import scala.collection.{ immutable, mutable }
 import scala.collection.JavaConverters.{ asJavaCollectionConverter, asScalaBufferConverter }
 import scala.util.DynamicVariable
 
@@ -61,7 +61,7 @@ import scala.util.DynamicVariable
 class TreeProxy(protected val treeViewer: TreeViewer, protected val observables: Seq[OriginalWritableList],
   protected val expandedItems: mutable.HashSet[TreeProxy.Item], protected val sortFn: Seq[Node[_ <: Element]] ⇒ Seq[Node[_ <: Element]]) extends XLoggable {
   /** Internal content that represents the actual flat projection of hierarchical structure. */
-  protected var content = parallel.immutable.ParVector[TreeProxy.Item]()
+  protected val content = new TreeProxy.Content
   /** Set of hidden items in hierarchical structure. */
   protected var hidden = mutable.HashSet[TreeProxy.Item]()
   /** The last known root element. */
@@ -74,7 +74,7 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
   def clearContent() {
     log.debug("clear content")
     App.assertEventThread()
-    content = parallel.immutable.ParVector[TreeProxy.Item]()
+    content.clear()
     observables.foreach(_.clear())
   }
   /** Clear hidden items set. */
@@ -83,10 +83,15 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
     App.assertEventThread()
     hidden.clear
   }
-  /** Get proxy content. */
-  def getContent() = {
+  /** Check whether the item is visible. */
+  def contains(item: TreeProxy.Item) = {
     App.assertEventThread()
-    content
+    content.contains(item)
+  }
+  /** Get snapshot of proxy content. */
+  def getContent(): immutable.IndexedSeq[TreeProxy.Item] = {
+    App.assertEventThread()
+    content.toIndexedSeq
   }
   /** Get expanded state of item. */
   def getExpandedState(item: TreeProxy.Item) = {
@@ -118,7 +123,7 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
   def onCollapseAll(): Unit = if (updateFlag.value) {
     log.debug("collapse all")
     App.assertEventThread()
-    content = parallel.immutable.ParVector[TreeProxy.Item]()
+    content.clear()
     observables.foreach(_.clear())
     root.foreach { root ⇒
       patchContent(0, sortFn(root.element.eNode.safeRead(_.children)).map(node ⇒ TreeProxy.Item(node.rootBox.e)).filterNot(hidden).toSeq, 0)
@@ -147,7 +152,7 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
     log.debug("expand all")
     App.assertEventThread()
     expandedItems.clear()
-    content = parallel.immutable.ParVector[TreeProxy.Item]()
+    content.clear()
     observables.foreach(_.clear())
     root.foreach { root ⇒
       val expandedItems = root.element.eNode.safeRead(_.flatten(sortFn, (node, f) ⇒ node.safeRead(f))).map(node ⇒ TreeProxy.Item(node.rootBox.e)).filterNot(hidden).toSeq
@@ -195,7 +200,7 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
   def onInputChanged(item: TreeProxy.Item) {
     log.debug(s"Input changed to $item.")
     App.assertEventThread()
-    content = parallel.immutable.ParVector[TreeProxy.Item]()
+    content.clear()
     hidden.clear
     observables.foreach(_.clear())
     if (item != null) {
@@ -244,16 +249,18 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
         to + 1
       }
       assert(idxContentNextItem >= 0)
-      val slice = content.slice(idxContentItem + 1, idxContentNextItem)
-      val after = sortFn(toRefresh.element.eNode.safeRead(_.children)).map(node ⇒ TreeProxy.Item(node.rootBox.e)).filterNot(hidden)
-      val beforeIndex = Map[TreeProxy.Item, Int](after.par.map(item ⇒ (item, {
-        val index = slice.indexOf(item)
-        if (index < 0) index else index + idxContentItem + 1 // save -1 value
-      })).seq: _*)
-      val before = after.map(item ⇒ (item, beforeIndex(item))).toSeq.filterNot(_._2 < 0).sortBy(_._2).map(_._1)
-      val common = LCS(before, after)
-      var delete = before.diff(common)
-      var append = after.diff(common)
+      val after = sortFn(toRefresh.element.eNode.safeRead(_.children)).map(node ⇒ TreeProxy.Item(node.rootBox.e)).filterNot(hidden).toIndexedSeq
+      val beforeIndex = immutable.HashMap[TreeProxy.Item, Int](after.map(item ⇒ (item, content.indexOf(item) match {
+        case index if index > idxContentItem && index < idxContentNextItem ⇒ index
+        case _ ⇒ -1 // save -1 value
+      })): _*)
+      val before = after.filterNot(beforeIndex(_) < 0).sortBy(beforeIndex)
+      val common = TreeProxy.LCS(before, after)
+      val commonSet = common.toSet
+      val delete = before.filterNot(commonSet)
+      val deleteSet = delete.toSet
+      val append = after.filterNot(commonSet)
+      val appendSet = append.toSet
       log.debug("before: " + before.mkString(","))
       log.debug("after: " + after.mkString(","))
       log.debug("common: " + common.mkString(","))
@@ -263,7 +270,7 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
         return
       // delete
       // sequence description: element, index, size
-      var toDelete = Seq[TreeProxy.Delete]()
+      var toDelete = Vector[TreeProxy.Delete]()
       // delete ghosts
       var idxDelete = idxContentItem + 1
       for (i ← 0 until before.size) {
@@ -276,9 +283,9 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
       if (idxDelete != idxContentNextItem)
         toDelete = toDelete :+ TreeProxy.Delete(TreeProxy.UnknownItem, idxDelete, idxContentNextItem - idxDelete)
       // delete before items
-      idxDelete = slice.size // point by initial to next element, to the void
+      idxDelete = idxContentNextItem - idxContentItem - 1 // point by initial to next element, to the void
       for (i ← before.size - 1 to 0 by -1)
-        if (delete.contains(before(i))) {
+        if (deleteSet(before(i))) {
           toDelete = toDelete :+ TreeProxy.Delete(before(i), beforeIndex(before(i)), idxDelete - beforeIndex(before(i)))
         } else {
           // skip, already exists
@@ -286,10 +293,10 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
         }
       // append
       // sequence description: element, index, subelements
-      var toAppend = Seq[TreeProxy.Append]()
+      var toAppend = Vector[TreeProxy.Append]()
       var idxAppend = idxContentNextItem
       for (i ← after.size - 1 to 0 by -1)
-        if (append.contains(after(i))) {
+        if (appendSet(after(i))) {
           toAppend = toAppend :+ TreeProxy.Append(after(i), idxAppend, collectAppend(after(i)))
         } else {
           // skip, already exists
@@ -338,22 +345,16 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
     val index = precalculatedIndex getOrElse content.indexOf(item)
     if (index == -1)
       return (-1, -1)
-    val ancestors = item.element.eAncestors
-    val ancestorsN = ancestors.size
-    var lastSubElementIndex = content.indexWhere(_.element.eAncestors.size <= ancestorsN, index + 1) - 1
+    var lastSubElementIndex = content.indexWhereDepth(content.depth(item), index + 1) - 1
     if (lastSubElementIndex < 0)
       lastSubElementIndex = content.size - 1
     (index, lastSubElementIndex)
   }
-  /** Patch parallel array 'content' and update table. */
+  /** Patch 'content' and update table. */
   protected def patchContent(from: Int, that: Seq[TreeProxy.Item], replaced: Int): Iterable[TreeProxy.Item] = {
     assert(replaced >= 0)
     val itemsToRemove = new ArrayList[TreeProxy.Item](replaced)
-    if (replaced > 0)
-      // .iterator suffix is important.
-      // content is ParVector!
-      content.slice(from, from + replaced).iterator.foreach(itemsToRemove.add)
-    content = content.patch(from, that, replaced)
+    content.patch(from, that, replaced).foreach(itemsToRemove.add)
     observables.foreach { observable ⇒
       if (!itemsToRemove.isEmpty())
         observable.removeAll(itemsToRemove)
@@ -378,25 +379,6 @@ class TreeProxy(protected val treeViewer: TreeViewer, protected val observables:
       }
     }
   }
-  /**
-   * King regards to Rex Kerr
-   * http://stackoverflow.com/questions/5734020/operating-on-scala-collections-in-generic-way
-   */
-  protected def LCS[A, C](a: C, b: C)(
-    implicit c2i: C ⇒ Iterable[A], cbf: collection.generic.CanBuildFrom[C, A, C]): C = {
-    val builder = cbf()
-    def ListLCS(a: Iterable[A], b: Iterable[A]): List[A] = {
-      if (a.isEmpty || b.isEmpty) Nil
-      else if (a.head == b.head) a.head :: ListLCS(a.tail, b)
-      else {
-        val case1 = ListLCS(a.tail, b)
-        val case2 = ListLCS(a, b.tail)
-        if (case1.length > case2.length) case1 else case2
-      }
-    }
-    builder ++= ListLCS(c2i(a), c2i(b))
-    builder.result()
-  }
 }
 
 object TreeProxy {
@@ -408,6 +390,234 @@ object TreeProxy {
     def apply(element: Element) = new Item(System.identityHashCode(element))(element)
   }
 
+  /**
+   * Get the longest common subsequence of two sequences, elements of b must be unique.
+   * Elements of a are replaced with their positions in b, then the longest increasing
+   * subsequence of positions is found with patience sorting in O(n log n).
+   */
+  def LCS[A](a: IndexedSeq[A], b: IndexedSeq[A]): IndexedSeq[A] = {
+    val bIndex = mutable.HashMap[A, Int]()
+    for (i ← 0 until b.size) bIndex(b(i)) = i
+    val positions = a.flatMap(bIndex.get).toArray
+    // Index of the position with the smallest tail in the pile.
+    val tails = new Array[Int](positions.length)
+    // Index of the predecessor position in the previous pile.
+    val previous = new Array[Int](positions.length)
+    var piles = 0
+    for (i ← 0 until positions.length) {
+      val position = positions(i)
+      var lo = 0
+      var hi = piles
+      while (lo < hi) {
+        val middle = (lo + hi) >>> 1
+        if (positions(tails(middle)) < position) lo = middle + 1 else hi = middle
+      }
+      previous(i) = if (lo > 0) tails(lo - 1) else -1
+      tails(lo) = i
+      if (lo == piles) piles += 1
+    }
+    val result = new Array[Int](piles)
+    var i = if (piles > 0) tails(piles - 1) else -1
+    var n = piles - 1
+    while (i >= 0) {
+      result(n) = positions(i)
+      i = previous(i)
+      n -= 1
+    }
+    result.toIndexedSeq.map(b)
+  }
+
+  /**
+   * Flat projection of the visible tree.
+   * It is an implicit treap with item -> node index and cached item depth,
+   * so position lookup, patching and subtree range search take O(log n).
+   */
+  class Content extends Iterable[Item] {
+    /** Treap root. */
+    protected var root: Content.Node = null
+    /** Item -> treap node. */
+    protected val nodes = new java.util.HashMap[Item, Content.Node]()
+    /** Node priority generator. */
+    protected val random = new java.util.Random()
+
+    /** Get item at the specific position. */
+    def apply(index: Int): Item = {
+      if (index < 0 || index >= size)
+        throw new IndexOutOfBoundsException(index.toString)
+      var node = root
+      var n = index
+      while (Content.size(node.left) != n) {
+        if (n < Content.size(node.left))
+          node = node.left
+        else {
+          n -= Content.size(node.left) + 1
+          node = node.right
+        }
+      }
+      node.item
+    }
+    /** Remove all items. */
+    def clear() {
+      root = null
+      nodes.clear()
+    }
+    /** Check whether there is such item. */
+    def contains(item: Item): Boolean = nodes.containsKey(item)
+    /** Get the cached item depth or -1 if there is no such item. */
+    def depth(item: Item): Int = nodes.get(item) match {
+      case null ⇒ -1
+      case node ⇒ node.depth
+    }
+    /** Get item position or -1 if there is no such item. */
+    def indexOf(item: Item): Int = nodes.get(item) match {
+      case null ⇒ -1
+      case node ⇒
+        var index = Content.size(node.left)
+        var n = node
+        while (n.parent != null) {
+          if (n eq n.parent.right)
+            index += Content.size(n.parent.left) + 1
+          n = n.parent
+        }
+        index
+    }
+    /** Get position of the first item at or after 'from' with depth less than or equal to the specific one, or -1. */
+    def indexWhereDepth(depth: Int, from: Int): Int = {
+      def find(node: Content.Node, offset: Int): Int = {
+        if (node == null || node.minDepth > depth || offset + node.size <= from)
+          return -1
+        val left = find(node.left, offset)
+        if (left >= 0)
+          return left
+        val index = offset + Content.size(node.left)
+        if (index >= from && node.depth <= depth)
+          return index
+        find(node.right, index + 1)
+      }
+      find(root, 0)
+    }
+    /** Iterate over all items. */
+    def iterator: Iterator[Item] = iterator(0, size)
+    /** Iterate over items from 'from' until 'until'. */
+    def iterator(from: Int, until: Int): Iterator[Item] = new Iterator[Item] {
+      protected val stack = new mutable.ArrayStack[Content.Node]
+      protected var remaining = math.max(0, math.min(until, Content.this.size) - math.max(from, 0))
+      // Seek to the first item.
+      if (remaining > 0) {
+        var node = root
+        var n = math.max(from, 0)
+        while (node != null) {
+          val leftSize = Content.size(node.left)
+          if (n <= leftSize) {
+            stack.push(node)
+            node = if (n < leftSize) node.left else null
+          } else {
+            n -= leftSize + 1
+            node = node.right
+          }
+        }
+      }
+      def hasNext = remaining > 0
+      def next(): Item = {
+        if (!hasNext)
+          throw new NoSuchElementException()
+        val node = stack.pop()
+        var child = node.right
+        while (child != null) {
+          stack.push(child)
+          child = child.left
+        }
+        remaining -= 1
+        node.item
+      }
+    }
+    /** Replace 'replaced' items at position 'from' with 'that' items, returns replaced items. */
+    def patch(from: Int, that: Seq[Item], replaced: Int): Seq[Item] = {
+      val (left, rest) = Content.split(root, from)
+      val (middle, right) = Content.split(rest, replaced)
+      val removed = mutable.ArrayBuffer[Item]()
+      Content.foreach(middle) { node ⇒
+        removed += node.item
+        if (nodes.get(node.item) eq node)
+          nodes.remove(node.item)
+      }
+      var inserted: Content.Node = null
+      that.foreach { item ⇒
+        val node = new Content.Node(item, item.element.eAncestors.size, random.nextInt())
+        nodes.put(item, node)
+        inserted = Content.merge(inserted, node)
+      }
+      root = Content.merge(Content.merge(left, inserted), right)
+      if (root != null)
+        root.parent = null
+      removed
+    }
+    override def size = Content.size(root)
+  }
+  object Content {
+    /** Get subtree size. */
+    @inline
+    def size(node: Node) = if (node == null) 0 else node.size
+
+    /** Apply f to the subtree nodes in order. */
+    def foreach(node: Node)(f: Node ⇒ Unit): Unit = if (node != null) {
+      foreach(node.left)(f)
+      f(node)
+      foreach(node.right)(f)
+    }
+    /** Merge two treaps, all items of 'a' precede items of 'b'. */
+    def merge(a: Node, b: Node): Node =
+      if (a == null) b
+      else if (b == null) a
+      else if (a.priority > b.priority) {
+        a.right = merge(a.right, b)
+        update(a)
+        a
+      } else {
+        b.left = merge(a, b.left)
+        update(b)
+        b
+      }
+    /** Split treap into the first n items and the rest. */
+    def split(node: Node, n: Int): (Node, Node) =
+      if (node == null) (null, null)
+      else if (size(node.left) >= n) {
+        val (left, right) = split(node.left, n)
+        node.left = right
+        update(node)
+        (left, node)
+      } else {
+        val (left, right) = split(node.right, n - size(node.left) - 1)
+        node.right = left
+        update(node)
+        (node, right)
+      }
+    /** Recalculate node aggregates and child links. */
+    def update(node: Node) {
+      node.size = 1 + size(node.left) + size(node.right)
+      node.minDepth = node.depth
+      if (node.left != null) {
+        node.left.parent = node
+        node.minDepth = math.min(node.minDepth, node.left.minDepth)
+      }
+      if (node.right != null) {
+        node.right.parent = node
+        node.minDepth = math.min(node.minDepth, node.right.minDepth)
+      }
+    }
+
+    /** Treap node. */
+    class Node(val item: Item, val depth: Int, val priority: Int) {
+      var left: Node = null
+      var right: Node = null
+      var parent: Node = null
+      /** Subtree size. */
+      var size = 1
+      /** Minimal item depth within subtree. */
+      var minDepth = depth
+    }
+  }
+
   case class Append(val item: Item, val index: Int, val sub: Seq[Item]) extends Modify
   case class Delete(val item: Item, val index: Int, val size: Int) extends Modify
   sealed trait Modify {
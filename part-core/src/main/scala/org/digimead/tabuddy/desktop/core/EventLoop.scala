@@ -43,8 +43,8 @@
 
 package org.digimead.tabuddy.desktop.core
 
-import java.util.concurrent.Exchanger
-import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.{ Exchanger, TimeUnit }
+import java.util.concurrent.atomic.{ AtomicLong, AtomicLongArray, AtomicReference }
 import org.digimead.digi.lib.aop.log
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
@@ -55,6 +55,7 @@ import org.eclipse.core.databinding.observable.Realm
 import org.eclipse.jface.databinding.swt.SWTObservables
 import org.eclipse.swt.widgets.Display
 import org.eclipse.ui.PlatformUI
+import scala.collection.mutable
 import scala.concurrent.Future
 
 /**
@@ -89,6 +90,8 @@ class EventLoop extends Runnable with EventLoop.Initializer with XLoggable {
     assert(initialized, "EventLoop is not initialized.")
     Thread.currentThread()
   }
+  /** The event thread stall watchdog. */
+  protected lazy val watchdog = new EventLoop.Watchdog(thread, EventLoop.watchdogThreshold, EventLoop.watchdogStallLimit)
 
   /** Current exit code. */
   def exitCode = exitCodeValue.synchronized { Option(exitCodeValue.get()) getOrElse None }
@@ -171,22 +174,22 @@ class EventLoop extends Runnable with EventLoop.Initializer with XLoggable {
     val display = App.display
     var ts = 0L
     var result = false
-    var duration = 0L
     // Start event in separated thread since watcher is synchronous
     // and watcher hook may depends on event loop
     Future { App.watch(EventLoop) on {} } onFailure { case e: Throwable ⇒ log.error(e.getMessage(), e) }
+    watchdog.start()
     while (exitCodeValue.get.isEmpty) try {
-      // ts = System.currentTimeMillis()
-      result = display.readAndDispatch()
-      // duration = System.currentTimeMillis() - ts
-      // if (duration > 500)
-      // log.error(s"Too heavy UI operation: ${duration}ms.")
+      result = false
+      ts = watchdog.enter()
+      try result = display.readAndDispatch()
+      finally watchdog.leave(ts, result)
       if (!result)
         display.sleep()
     } catch {
       case e: Throwable ⇒
         log.error(e.getMessage, e)
     }
+    watchdog.stop()
     Console ! Console.Message.Notice("Shutdown application.")
     Future { App.watch(EventLoop) off {} } onFailure { case e: Throwable ⇒ log.error(e.getMessage(), e) }
     log.debug("Event loop is finishing. Process pending events.")
@@ -215,6 +218,13 @@ object EventLoop {
   /** Startup synchronization. */
   protected lazy val startSync = new Exchanger[Null]
 
+  /** The event thread stall watchdog. */
+  def watchdog = runnable.watchdog
+  /** Dispatch duration in ms after which the event thread stack is sampled. */
+  def watchdogThreshold = DI.watchdogThreshold
+  /** Maximum number of kept stalls. */
+  def watchdogStallLimit = DI.watchdogStallLimit
+
   override def toString = "core.EventLoop[Singleton]"
 
   /**
@@ -236,6 +246,157 @@ object EventLoop {
   trait Initializer {
     def eventLoopThreadSync() = EventLoop.startSync.exchange(null)
   }
+  /**
+   * Lock free histogram with logarithmic buckets that are linearly subdivided.
+   * The relative error is 2^(1 - precisionBits), 12.5% by default.
+   */
+  class Histogram(val highestBits: Int = 40, val precisionBits: Int = 4) {
+    /** Number of sub buckets in the half of magnitude. */
+    protected val half = 1 << (precisionBits - 1)
+    /** Bucket counters. */
+    protected val counts = new AtomicLongArray((highestBits - precisionBits + 2) * half)
+    /** The highest trackable value. */
+    protected val highest = (1L << highestBits) - 1
+
+    /** Get number of recorded values. */
+    def count: Long = {
+      var n = 0L
+      for (i ← 0 until counts.length()) n += counts.get(i)
+      n
+    }
+    /** Get the upper bound of the highest recorded value. */
+    def max: Long = (counts.length() - 1 to 0 by -1).find(counts.get(_) > 0).map(upperBound) getOrElse 0L
+    /** Get the upper bound of values that are below the percentile. */
+    def percentile(p: Double): Long = {
+      val snapshot = for (i ← 0 until counts.length()) yield counts.get(i)
+      val total = snapshot.sum
+      if (total == 0)
+        return 0
+      val target = math.max(1L, math.ceil(p / 100 * total).toLong)
+      var accumulated = 0L
+      for (i ← 0 until snapshot.length) {
+        accumulated += snapshot(i)
+        if (accumulated >= target)
+          return upperBound(i)
+      }
+      upperBound(snapshot.length - 1)
+    }
+    /** Add value to the histogram. */
+    def record(value: Long) = counts.incrementAndGet(index(math.min(math.max(value, 0L), highest)))
+    /** Clear the histogram. */
+    def reset() = for (i ← 0 until counts.length()) counts.set(i, 0)
+
+    /** Get bucket index of the value. */
+    protected def index(value: Long): Int = {
+      val magnitude = math.max(0, 63 - java.lang.Long.numberOfLeadingZeros(value) - (precisionBits - 1))
+      magnitude * half + (value >>> magnitude).toInt
+    }
+    /** Get the highest value of the bucket. */
+    protected def upperBound(index: Int): Long = {
+      val magnitude = math.max(0, index / half - 1)
+      ((index - magnitude * half + 1).toLong << magnitude) - 1
+    }
+  }
+  /**
+   * Event thread stall watchdog.
+   * The event thread marks each dispatch. The monitor thread wakes up twice per threshold
+   * and samples the event thread stack only if the current dispatch is longer than threshold.
+   */
+  class Watchdog(val thread: Thread, val threshold: Long, val stallLimit: Int) extends XLoggable {
+    /** Dispatch duration histogram in µs. */
+    val histogram = new Histogram()
+    /** Number of detected stalls. */
+    val stallCount = new AtomicLong()
+    /** Start of the current dispatch in ns or 0. */
+    @volatile protected var dispatchStart = 0L
+    /** Monitor thread. */
+    @volatile protected var monitor = Option.empty[Thread]
+    /** Start of the last sampled dispatch in ns. */
+    @volatile protected var sampled = 0L
+    /** Last stalls. */
+    protected val stallBuffer = mutable.Queue[Watchdog.Stall]()
+    /** Threshold in ns. */
+    protected val thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold)
+    private val lock = new Object
+
+    /** Mark the beginning of the dispatch. */
+    def enter(): Long = {
+      val ts = System.nanoTime()
+      dispatchStart = ts
+      ts
+    }
+    /** Mark the end of the dispatch. */
+    def leave(ts: Long, dispatched: Boolean) {
+      dispatchStart = 0L
+      val duration = System.nanoTime() - ts
+      if (dispatched)
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(duration))
+      if (thresholdNanos > 0 && duration > thresholdNanos)
+        complete(ts, duration)
+    }
+    /** Clear histogram and stalls. */
+    def reset() = lock.synchronized {
+      histogram.reset()
+      stallBuffer.clear()
+      stallCount.set(0)
+    }
+    /** Get last stalls. */
+    def stalls: Seq[Watchdog.Stall] = lock.synchronized { stallBuffer.toList }
+    /** Start the monitor thread. */
+    def start() = lock.synchronized {
+      if (threshold > 0 && monitor.isEmpty) {
+        val t = new Thread(new Runnable { def run = watch() }, "EventLoop watchdog")
+        t.setDaemon(true)
+        t.start()
+        monitor = Some(t)
+      }
+    }
+    /** Stop the monitor thread. */
+    def stop() = lock.synchronized {
+      monitor.foreach(_.interrupt())
+      monitor = None
+    }
+
+    /** Update the stall with the final duration. */
+    protected def complete(ts: Long, duration: Long) {
+      log.error(s"Too heavy UI operation: ${TimeUnit.NANOSECONDS.toMillis(duration)}ms.")
+      lock.synchronized { stallBuffer.find(_.start == ts) }.foreach(_.duration = duration)
+    }
+    /** Monitor loop. */
+    protected def watch() = try {
+      val interval = math.max(threshold / 2, 1)
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.sleep(interval)
+        val ts = dispatchStart
+        if (ts != 0 && ts != sampled && System.nanoTime() - ts > thresholdNanos) {
+          val stack = thread.getStackTrace()
+          // Skip the sample if the dispatch is already finished.
+          if (dispatchStart == ts) {
+            sampled = ts
+            stallCount.incrementAndGet()
+            val stall = new Watchdog.Stall(ts, System.currentTimeMillis(), stack)
+            stall.duration = System.nanoTime() - ts
+            lock.synchronized {
+              stallBuffer.enqueue(stall)
+              while (stallBuffer.size > stallLimit)
+                stallBuffer.dequeue()
+            }
+            log.warn(s"Event thread is blocked for more than ${threshold}ms at ${stack.headOption.getOrElse("unknown location")}.")
+          }
+        }
+      }
+    } catch {
+      case e: InterruptedException ⇒
+        log.debug("Watchdog is stopped.")
+    }
+  }
+  object Watchdog {
+    /** Sampled event thread stall. */
+    class Stall(val start: Long, val timestamp: Long, val stack: Seq[StackTraceElement]) {
+      /** Stall duration in ns. It is updated when the dispatch is finished. */
+      @volatile var duration = 0L
+    }
+  }
   /** Event loop exit codes. */
   sealed trait Code
   object Code {
@@ -249,5 +410,9 @@ object EventLoop {
   private object DI extends XDependencyInjection.PersistentInjectable {
     /** EventLoop implementation */
     lazy val implementation = injectOptional[Class[EventLoop]]("EventLoop") getOrElse classOf[EventLoop]
+    /** Dispatch duration in ms after which the event thread stack is sampled, 0 disables monitor. */
+    lazy val watchdogThreshold = injectOptional[Long]("EventLoop.Watchdog.Threshold") getOrElse 500L
+    /** Maximum number of kept stalls. */
+    lazy val watchdogStallLimit = injectOptional[Int]("EventLoop.Watchdog.StallLimit") getOrElse 16
   }
 }
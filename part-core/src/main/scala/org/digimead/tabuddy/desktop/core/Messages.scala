@@ -128,6 +128,9 @@ object Messages extends NLS with XLoggable {
   val errorReportUploadFailed_text = ""
   val errorReportUploadTitle_text = ""
   val error_text = ""
+  val eventLoopDescriptionLong_text = ""
+  val eventLoopDescriptionShort_text = ""
+  val eventLoop_text = ""
   val exitDescriptionLong_text = ""
   val exitDescriptionShort_text = ""
   val exit_text = ""
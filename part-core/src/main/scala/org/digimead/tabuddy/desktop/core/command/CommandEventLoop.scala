@@ -0,0 +1,105 @@
+/**
+ * This file is part of the TA Buddy project.
+ * Copyright (c) 2015 Alexey Aksenov ezh@ezh.msk.ru
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Global License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED
+ * BY Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS»,
+ * Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS» DISCLAIMS
+ * THE WARRANTY OF NON INFRINGEMENT OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Global License for more details.
+ * You should have received a copy of the GNU Affero General Global License
+ * along with this program; if not, see http://www.gnu.org/licenses or write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA, 02110-1301 USA, or download the license from the following URL:
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Global License.
+ *
+ * In accordance with Section 7(b) of the GNU Affero General Global License,
+ * you must retain the producer line in every report, form or document
+ * that is created or manipulated using TA Buddy.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the TA Buddy software without
+ * disclosing the source code of your own applications.
+ * These activities include: offering paid services to customers,
+ * serving files in a web or/and network application,
+ * shipping TA Buddy with a closed source product.
+ *
+ * For more information, please contact Digimead Team at this
+ * address: ezh@ezh.msk.ru
+ */
+
+
+package org.digimead.tabuddy.desktop.core.command
+
+import java.util.{ Date, UUID }
+import java.util.concurrent.TimeUnit
+import org.digimead.digi.lib.log.api.XLoggable
+import org.digimead.tabuddy.desktop.core.{ EventLoop, Messages, Report }
+import org.digimead.tabuddy.desktop.core.console.Console
+import org.digimead.tabuddy.desktop.core.definition.Context
+import org.digimead.tabuddy.desktop.core.definition.command.Command
+import org.digimead.tabuddy.desktop.core.support.App
+import scala.concurrent.Future
+
+/**
+ * Event loop command that shows dispatch latency and event thread stalls.
+ */
+object CommandEventLoop extends XLoggable {
+  import Command.parser._
+  private val resetArg = "-reset"
+  private val stacksArg = "-stacks"
+  /** Reported percentiles. */
+  private val percentiles = Seq("p50" -> 50.0, "p90" -> 90.0, "p99" -> 99.0, "p99.9" -> 99.9)
+  /** Akka execution context. */
+  implicit lazy val ec = App.system.dispatcher
+  /** Command description. */
+  implicit lazy val descriptor = Command.Descriptor(UUID.randomUUID())(Messages.eventLoop_text,
+    Messages.eventLoopDescriptionShort_text, Messages.eventLoopDescriptionLong_text,
+    (activeContext, parserContext, parserResult) ⇒ Future {
+      val watchdog = EventLoop.watchdog
+      parserResult match {
+        case Some(this.resetArg) ⇒
+          watchdog.reset()
+          "Event loop statistics are cleared."
+        case option ⇒
+          val histogram = watchdog.histogram
+          val latency = (percentiles.map { case (name, p) ⇒ name -> histogram.percentile(p) } :+ ("max" -> histogram.max)).map {
+            case (name, value) ⇒ s"${name}: ${Console.BWHITE}${millis(value)}${Console.RESET}"
+          }.mkString(", ")
+          val stalls = watchdog.stalls.reverse.map { stall ⇒
+            val header = s"${Report.dateString(new Date(stall.timestamp))} " +
+              s"${Console.BWHITE}${TimeUnit.NANOSECONDS.toMillis(stall.duration)}ms${Console.RESET}"
+            if (option == Some(stacksArg))
+              (header +: stall.stack.map("    at " + _)).mkString("\n")
+            else
+              header + stall.stack.headOption.map(" at " + _).getOrElse("")
+          }
+          (Seq(s"Dispatches: ${Console.BWHITE}${histogram.count}${Console.RESET}",
+            s"Dispatch latency: ${latency}",
+            s"Queue depth/latency/max: ${Console.BWHITE}${App.eventThreadQueueDepth}/" +
+              s"${App.eventThreadQueueLatency}ms/${App.eventThreadQueueLatencyMax}ms${Console.RESET}",
+            s"Context events: ${Console.BWHITE}${Context.Event.statistics()}${Console.RESET}",
+            s"Stalls longer than ${watchdog.threshold}ms: ${Console.BWHITE}${watchdog.stallCount.get()}${Console.RESET}") ++ stalls).mkString("\n")
+      }
+    })
+  /** Command parser. */
+  lazy val parser = Command.CmdParser(descriptor.name ~> opt(sp ~> (
+    (resetArg, Command.Hint(resetArg, Some("clear histogram and stalls"))) |
+    (stacksArg, Command.Hint(stacksArg, Some("show stacks of the last stalls"))))))
+
+  /** Convert µs to the string with ms. */
+  protected def millis(value: Long) = "%.3fms".format(value / 1000.0)
+}
@@ -61,6 +61,8 @@ class Commands extends XLoggable {
   /** Configure component commands. */
   @log
   def configure() = lock.synchronized {
+    Command.register(CommandEventLoop.descriptor)
+    val coreEventLoop = Command.addToContext(Core.context, CommandEventLoop.parser)
     Command.register(CommandExit.descriptor)
     val coreExit = Command.addToContext(Core.context, CommandExit.parser)
     Command.register(CommandHelp.descriptor)
@@ -74,7 +76,7 @@ class Commands extends XLoggable {
      */
     Command.register(context.CommandContextList.descriptor)
     val coreContextList = Command.addToContext(Core.context, context.CommandContextList.parser)
-    contextParsers = Seq(coreExit, coreHelp, coreInfo, coreContextList).flatten
+    contextParsers = Seq(coreEventLoop, coreExit, coreHelp, coreInfo, coreContextList).flatten
   }
   /** Unconfigure component commands. */
   @log
@@ -84,6 +86,7 @@ class Commands extends XLoggable {
     Command.unregister(CommandInfo.descriptor)
     Command.unregister(CommandHelp.descriptor)
     Command.unregister(CommandExit.descriptor)
+    Command.unregister(CommandEventLoop.descriptor)
     /*
      * context
      */
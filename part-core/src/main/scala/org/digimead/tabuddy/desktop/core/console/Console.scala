@@ -49,7 +49,7 @@ import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.Core
 import org.digimead.tabuddy.desktop.core.console.api.XConsole
-import org.digimead.tabuddy.desktop.core.definition.Operation
+import org.digimead.tabuddy.desktop.core.definition.{ Context, Operation }
 import org.digimead.tabuddy.desktop.core.definition.command.Command
 import org.digimead.tabuddy.desktop.core.definition.command.api.XCommand
 import org.digimead.tabuddy.desktop.core.support.App
@@ -124,14 +124,18 @@ class Console extends Actor with XLoggable {
 
   /** Run one command submitted by the user. */
   protected def command(line: String, from: Option[XConsole.Projection], sender: ActorRef) = try {
+    val scope = from.collect { case scoped: Console.Scoped ⇒ scoped }
     // NOTE: App.system in replay may be null if application is terminated
-    Command.parse(line) match {
+    (scope match {
+      case Some(scoped) ⇒ Command.parse(line, scoped.parser)
+      case None ⇒ Command.parse(line)
+    }) match {
       case Command.Success(contextParserId, result) ⇒
         Command.getContextParserInfo(contextParserId) match {
           case Some(info) ⇒
             Command.getDescriptor(info.parserId) match {
               case Some(commandDescriptor) ⇒
-                val activeContext = Core.context.getActiveLeaf()
+                val activeContext = scope.map(_.context) getOrElse Core.context.getActiveLeaf()
                 Console.log.info(s"Execute command '${commandDescriptor.name}' within context '${info.context}' with argument: " + result)
                 implicit val ec = App.system.dispatcher
                 commandDescriptor.callback(activeContext, info.context, result) onComplete {
@@ -193,13 +197,16 @@ class Console extends Actor with XLoggable {
       case error ⇒
         from.foreach(_.echo(Console.msgAlert.format(s"${commandDescriptor.name} is failed. " + error) + Console.RESET))
     }
-  /** Command future is successful completed. */
+  /** Command future is successful completed. Result is sent back to the originating console, if any. */
   protected def commandOnSuccess(commandDescriptor: Command.Descriptor, result: Any, from: Option[XConsole.Projection]) {
     val message = Console.convert(commandDescriptor, result) match {
       case "" ⇒ s"""Command "${commandDescriptor.name}" is completed."""
       case result ⇒ s"""Command "${commandDescriptor.name}" is completed:\r\n""" + Console.RESET + result
     }
-    Console ! Console.Message.Notice(message)
+    from match {
+      case Some(projection) ⇒ projection.echo(Console.msgNotice.format(message) + Console.RESET)
+      case None ⇒ Console ! Console.Message.Notice(message)
+    }
   }
   /** Echo message. */
   protected def echo(msg: String) = consoles.foreach(_.echo(msg + Console.RESET))
@@ -233,6 +240,17 @@ object Console extends XConsole with XLoggable {
   /** Console actor path. */
   lazy val path = Core.path / id
 
+  /**
+   * Console projection with its own command context.
+   * Commands of the projection are parsed and evaluated within that context branch instead of the active one.
+   */
+  trait Scoped extends XConsole.Projection {
+    /** Command context of the projection. */
+    def context: Context
+    /** Command parser of the context branch. */
+    def parser: Command.parser.Parser[Any]
+  }
+
   /** Console converter. */
   def convert = DI.converter
   /** Convert hint to text. */
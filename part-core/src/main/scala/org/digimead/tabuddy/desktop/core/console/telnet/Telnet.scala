@@ -43,6 +43,383 @@
 
 package org.digimead.tabuddy.desktop.core.console.telnet
 
+import java.io.{ ByteArrayOutputStream, IOException }
+import java.net.{ InetAddress, InetSocketAddress }
+import java.nio.ByteBuffer
+import java.nio.channels.{ SelectionKey, Selector, ServerSocketChannel, SocketChannel }
+import java.security.MessageDigest
+import java.util.concurrent.{ ConcurrentHashMap, ConcurrentLinkedQueue }
+import java.util.concurrent.atomic.{ AtomicBoolean, AtomicInteger, AtomicLong, AtomicReference }
+import org.digimead.digi.lib.api.XDependencyInjection
+import org.digimead.digi.lib.log.api.XLoggable
+import org.digimead.tabuddy.desktop.core.Core
+import org.digimead.tabuddy.desktop.core.console.Console
+import org.digimead.tabuddy.desktop.core.console.api.XConsole
+import org.digimead.tabuddy.desktop.core.definition.command.Command
+import org.digimead.tabuddy.desktop.core.support.App
+import scala.collection.JavaConverters.mapAsScalaConcurrentMapConverter
+import scala.concurrent.Future
+import scala.util.Try
+import scala.util.control.NonFatal
+
+/**
+ * Telnet console that serves any number of sessions from a single selector thread.
+ * Each session must send the shared secret before the first command.
+ */
+class Telnet extends XConsole.Projection with XLoggable {
+  /** Flag indicating whether the prompt is enabled. */
+  @volatile protected var promptEnabled = false
+  /** Selector of the server and session channels. */
+  @volatile protected var selector = Option.empty[Selector]
+  /** Server channel. */
+  @volatile protected var server = Option.empty[ServerSocketChannel]
+  /** Active sessions. */
+  protected val sessions = new ConcurrentHashMap[SocketChannel, Telnet.Session]().asScala
+  /** Thread with selector loop. */
+  @volatile protected var thread = Option.empty[Thread]
+
+  /** Get server address. */
+  def address: Option[InetSocketAddress] = server.map(_.getLocalAddress().asInstanceOf[InetSocketAddress])
+  /** Broadcast message to all sessions. */
+  def echo(msg: String) = sessions.values.filter(_.isAuthenticated).foreach(_.echo(msg))
+  /** Start prompt processing. */
+  def enablePrompt() {
+    promptEnabled = true
+    sessions.values.filter(_.isAuthenticated).foreach(_.prompt())
+  }
+  /** Check whether the prompt is enabled. */
+  def isPromptEnabled = promptEnabled
+  /** Start console. */
+  def start(): Unit = synchronized {
+    if (thread.nonEmpty)
+      throw new IllegalStateException("Telnet console is already started.")
+    if (Telnet.secret.isEmpty) {
+      log.error("Unable to start telnet console: Console.Telnet.Secret is not defined.")
+      return
+    }
+    val selector = Selector.open()
+    val server = ServerSocketChannel.open()
+    try {
+      server.configureBlocking(false)
+      server.bind(new InetSocketAddress(InetAddress.getByName(Telnet.host), Telnet.port))
+      server.register(selector, SelectionKey.OP_ACCEPT)
+    } catch {
+      case e: IOException ⇒
+        log.error(s"Unable to start telnet console at ${Telnet.host}:${Telnet.port}: " + e.getMessage(), e)
+        server.close()
+        selector.close()
+        return
+    }
+    log.info(s"Start telnet console at ${server.getLocalAddress()}.")
+    this.selector = Some(selector)
+    this.server = Some(server)
+    val thread = new Thread(new Runnable {
+      def run = try loop(selector) catch {
+        case e: IOException ⇒ log.debug("Telnet console loop is terminated: " + e.getMessage())
+      } finally close()
+    }, "Telnet console")
+    thread.setDaemon(true)
+    thread.start()
+    this.thread = Some(thread)
+  }
+  /** Stop console. */
+  def stop() = synchronized {
+    log.debug("Stop telnet console.")
+    thread.foreach(_.interrupt())
+    selector.foreach(_.wakeup())
+    thread = None
+  }
+  /** Wake up the selector thread. */
+  def wakeup() = selector.foreach(_.wakeup())
+
+  /** Accept new session. */
+  protected def accept(selector: Selector, server: ServerSocketChannel) = Option(server.accept()).foreach { channel ⇒
+    if (sessions.size >= Telnet.maxSessions) {
+      log.warn(s"Reject telnet session from ${channel.getRemoteAddress()}: too many sessions.")
+      channel.close()
+    } else {
+      log.info(s"Accept telnet session from ${channel.getRemoteAddress()}.")
+      channel.configureBlocking(false)
+      val key = channel.register(selector, SelectionKey.OP_READ)
+      val session = new Telnet.Session(channel, key, this)
+      sessions(channel) = session
+      session.send(Telnet.secretPrompt)
+    }
+  }
+  /** Greet authenticated session. */
+  protected[telnet] def greet(session: Telnet.Session) {
+    session.echo(Console.welcomeMessage() + Console.RESET)
+    if (promptEnabled)
+      session.prompt()
+  }
+  /** Close server and all sessions. */
+  protected def close() {
+    sessions.values.foreach(_.stop())
+    sessions.clear()
+    server.foreach(server ⇒ try server.close() catch { case e: IOException ⇒ })
+    selector.foreach(selector ⇒ try selector.close() catch { case e: IOException ⇒ })
+    server = None
+    selector = None
+  }
+  /** Selector loop. */
+  protected def loop(selector: Selector) {
+    while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+      selector.select()
+      sessions.values.foreach(_.updateInterest())
+      val keys = selector.selectedKeys().iterator()
+      while (keys.hasNext()) {
+        val key = keys.next()
+        keys.remove()
+        key.channel() match {
+          case server: ServerSocketChannel if key.isValid() && key.isAcceptable() ⇒
+            try accept(selector, server) catch {
+              case e: IOException ⇒ log.warn("Unable to accept telnet session: " + e.getMessage())
+            }
+          case channel: SocketChannel ⇒
+            sessions.get(channel).foreach { session ⇒
+              try {
+                if (key.isValid() && key.isReadable())
+                  session.read()
+                if (key.isValid() && key.isWritable())
+                  session.write()
+              } catch {
+                case e: IOException ⇒
+                  log.debug(s"Telnet session ${session} is broken: " + e.getMessage())
+                  session.stop()
+                case NonFatal(e) ⇒
+                  log.error(s"Unable to process telnet session ${session}: " + e.getMessage(), e)
+                  session.stop()
+              }
+            }
+          case _ ⇒
+        }
+      }
+    }
+  }
+  /** Forget session. */
+  protected[telnet] def remove(session: Telnet.Session) = sessions.remove(session.channel)
+
+  override def toString = "Console.Telnet"
+}
+
 object Telnet {
+  /** Telnet commands. */
+  val IAC = 255.toByte
+  val SB = 250.toByte
+  val SE = 240.toByte
+  val WILL = 251.toByte
+  val DONT = 254.toByte
+
+  /** Request line of HTTP client, for example a browser page that posts to the console port. */
+  val httpRequestLine = "^[A-Z]+ \\S+ HTTP/\\d.*".r
+  /** Secret prompt. */
+  val secretPrompt = "Secret: "
+
+  /** Get server host. */
+  def host = DI.host
+  /** Get maximum number of lines in session history. */
+  def historySize = DI.historySize
+  /** Get maximum length of input line. */
+  def lineLimit = DI.lineLimit
+  /** Get maximum number of sessions. */
+  def maxSessions = DI.maxSessions
+  /** Get maximum size of pending output per session (in bytes). */
+  def outputLimit = DI.outputLimit
+  /** Get server port. */
+  def port = DI.port
+  /** Get shared secret that is required before the first command. */
+  def secret = DI.secret
+
+  /**
+   * Telnet session.
+   * Each session has its own command context that is the child of the core context,
+   * so commands are not evaluated against the active context branch of the UI.
+   * The first line must be the shared secret, otherwise the session is closed.
+   * Output is queued without blocking the caller, messages over the output limit are dropped.
+   * A line that ends with TAB prints completion proposals, '!' lists history, '!!' and '!n' repeat commands.
+   */
+  class Session(val channel: SocketChannel, key: SelectionKey, telnet: Telnet) extends Console.Scoped with XLoggable {
+    /** Akka execution context. */
+    implicit lazy val ec = App.system.dispatcher
+    /** Flag indicating whether the session sent the shared secret. */
+    @volatile protected var authenticated = false
+    /** Command history. */
+    protected var history = Vector.empty[String]
+    /** Input buffer. */
+    protected val input = ByteBuffer.allocate(4096)
+    /** Telnet command parser state. 0 - data, 1 - IAC, 2 - option, 3 - subnegotiation, 4 - IAC within subnegotiation. */
+    protected var inputState = 0
+    /** Current input line. */
+    protected val line = new ByteArrayOutputStream()
+    /** Number of dropped messages. */
+    protected val dropped = new AtomicLong()
+    /** Pending output. */
+    protected val output = new ConcurrentLinkedQueue[ByteBuffer]()
+    /** Size of pending output. */
+    protected val outputSize = new AtomicInteger()
+    /** Session command parser that is rebuilt by the context listener. */
+    protected val parserCombinators = new AtomicReference[Command.parser.Parser[Any]](Command.parser.stubParser)
+    /** Session proposal provider. */
+    protected lazy val proposalProvider = new Command.ProposalProvider(parserCombinators)
+    /** Flag indicating whether the session is closed. */
+    protected val stopped = new AtomicBoolean()
+    /** Session remote address. */
+    val remote = try channel.getRemoteAddress().toString() catch { case e: IOException ⇒ "unknown" }
+    /** Session command context. */
+    val context = App.execNGet { Core.context.createChild(s"Telnet.Session(${remote})") }
+    /** Session command context listener. */
+    protected val listener = new Command.Listener(parserCombinators, context)
+
+    /** Send message to this session. */
+    def echo(msg: String) = send(msg.replaceAll("\r?\n", "\r\n") + "\r\n")
+    /** Check whether the session sent the shared secret. */
+    def isAuthenticated = authenticated
+    /** Get command parser of the session context branch. */
+    def parser = parserCombinators.get
+    /** Session prompt is always enabled. */
+    def enablePrompt() = prompt()
+    /** Print prompt. */
+    def prompt() = send(Console.prompt + " ")
+    /** Read available input. */
+    def read() {
+      if (channel.read(input) == -1)
+        throw new IOException("End of stream.")
+      input.flip()
+      while (input.hasRemaining() && channel.isOpen())
+        process(input.get())
+      input.clear()
+    }
+    /** Queue text for the session. */
+    def send(text: String): Unit = {
+      val bytes = text.getBytes(io.Codec.UTF8.charSet)
+      val size = outputSize.addAndGet(bytes.length)
+      if (size > outputLimit && size != bytes.length) {
+        outputSize.addAndGet(-bytes.length)
+        dropped.incrementAndGet()
+      } else {
+        output.add(ByteBuffer.wrap(bytes))
+        telnet.wakeup()
+      }
+    }
+    /** Session is started on accept. */
+    def start() {}
+    /** Close session. */
+    def stop() = if (stopped.compareAndSet(false, true)) {
+      log.info(s"Close telnet session ${remote}.")
+      telnet.remove(this)
+      key.cancel()
+      try channel.close() catch { case e: IOException ⇒ }
+      listener.dispose()
+      App.exec { context.dispose() }
+    }
+    /** Update selection interest with regard to pending output. */
+    def updateInterest() = if (key.isValid())
+      key.interestOps(if (output.isEmpty()) SelectionKey.OP_READ else SelectionKey.OP_READ | SelectionKey.OP_WRITE)
+    /** Write pending output. */
+    def write() {
+      var buffer = output.peek()
+      while (buffer != null) {
+        val written = channel.write(buffer)
+        outputSize.addAndGet(-written)
+        if (buffer.hasRemaining())
+          return // socket buffer is full
+        output.poll()
+        buffer = output.peek()
+      }
+      val lost = dropped.getAndSet(0)
+      if (lost > 0)
+        echo(Console.msgWarning.format(s"${lost} message(s) dropped, the connection is too slow.") + Console.RESET)
+      updateInterest()
+    }
+
+    /** Print proposals for the input line. */
+    protected def complete(text: String) = Future {
+      proposalProvider.setInput(text)
+      proposalProvider.getProposals(text, text.length()).foreach { proposal ⇒
+        echo(Console.hintToText(proposal.getLabel(), Option(proposal.getDescription()), proposal.getContent()) + Console.RESET)
+      }
+      send(Console.prompt + " " + text)
+    } onFailure { case e: Throwable ⇒ log.error("Unable to get proposals: " + e.getMessage(), e) }
+    /** Check the shared secret. */
+    protected def authenticate(text: String) = text match {
+      case Telnet.httpRequestLine() ⇒
+        log.warn(s"Reject telnet session ${remote}: HTTP request.")
+        stop()
+      case text if Telnet.secret.exists(secret ⇒ MessageDigest.isEqual(secret.getBytes(io.Codec.UTF8.charSet),
+        text.trim().getBytes(io.Codec.UTF8.charSet))) ⇒
+        log.info(s"Telnet session ${remote} is authenticated.")
+        authenticated = true
+        telnet.greet(this)
+      case _ ⇒
+        log.warn(s"Reject telnet session ${remote}: invalid secret.")
+        stop()
+    }
+    /** Process input line. */
+    protected def onLine(text: String): Unit = if (!authenticated) authenticate(text) else text match {
+      case completion if completion.endsWith("\t") ⇒
+        complete(completion.stripSuffix("\t"))
+      case "!" ⇒
+        history.zipWithIndex.foreach { case (line, n) ⇒ echo(s"${n + 1} ${line}") }
+        prompt()
+      case "!!" if history.nonEmpty ⇒
+        onLine(history.last)
+      case repeat if repeat.startsWith("!") && repeat.drop(1).forall(_.isDigit) && repeat.length() > 1 ⇒
+        Try(repeat.drop(1).toInt).toOption.flatMap(n ⇒ history.lift(n - 1)) match {
+          case Some(line) ⇒ onLine(line)
+          case None ⇒
+            echo(Console.msgWarning.format(s"There is no history entry ${repeat.drop(1)}.") + Console.RESET)
+            prompt()
+        }
+      case command if command.trim().nonEmpty ⇒
+        history = (history :+ command).takeRight(historySize)
+        Console ! Console.Message.Command(command, Some(this))
+        prompt()
+      case _ ⇒
+        prompt()
+    }
+    /** Process input byte. */
+    protected def process(byte: Byte) = inputState match {
+      case 0 if byte == IAC ⇒ inputState = 1
+      case 0 if byte == '\n' ⇒
+        val text = new String(line.toByteArray(), io.Codec.UTF8.charSet)
+        line.reset()
+        onLine(text)
+      case 0 if byte == '\r' || byte == 0 ⇒
+      case 0 ⇒
+        if (line.size() < lineLimit)
+          line.write(byte)
+      case 1 if byte == SB ⇒ inputState = 3
+      case 1 if byte >= WILL && byte <= DONT ⇒ inputState = 2
+      case 1 if byte == IAC ⇒
+        inputState = 0
+        line.write(byte)
+      case 1 ⇒ inputState = 0
+      case 2 ⇒ inputState = 0
+      case 3 if byte == IAC ⇒ inputState = 4
+      case 3 ⇒
+      case 4 if byte == SE ⇒ inputState = 0
+      case 4 ⇒ inputState = 3
+    }
 
+    override def toString = s"Console.Telnet.Session(${remote})"
+  }
+  /**
+   * Dependency injection routines
+   */
+  private object DI extends XDependencyInjection.PersistentInjectable {
+    /** Server host. */
+    lazy val host = injectOptional[String]("Console.Telnet.Host") getOrElse "127.0.0.1"
+    /** Maximum number of lines in session history. */
+    lazy val historySize = injectOptional[Int]("Console.Telnet.HistorySize") getOrElse 100
+    /** Maximum length of input line. */
+    lazy val lineLimit = injectOptional[Int]("Console.Telnet.LineLimit") getOrElse 65536
+    /** Maximum number of sessions. */
+    lazy val maxSessions = injectOptional[Int]("Console.Telnet.MaxSessions") getOrElse 8
+    /** Maximum size of pending output per session (in bytes). */
+    lazy val outputLimit = injectOptional[Int]("Console.Telnet.OutputLimit") getOrElse 256 * 1024
+    /** Server port. */
+    lazy val port = injectOptional[Int]("Console.Telnet.Port") getOrElse 4000
+    /** Shared secret that is required before the first command. */
+    lazy val secret = injectOptional[String]("Console.Telnet.Secret").filter(_.nonEmpty)
+  }
 }
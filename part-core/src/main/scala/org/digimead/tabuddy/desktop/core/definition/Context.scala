@@ -43,13 +43,16 @@
 
 package org.digimead.tabuddy.desktop.core.definition
 
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.{ AtomicInteger, AtomicLong }
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.definition.Context.Event
 import org.digimead.tabuddy.desktop.core.support.App
 import org.eclipse.e4.core.internal.contexts.EclipseContext
 import scala.collection.JavaConversions.asScalaSet
-import scala.collection.immutable
+import scala.collection.{ immutable, mutable }
+import scala.concurrent.duration.{ Duration, FiniteDuration }
 import scala.language.implicitConversions
 
 /**
@@ -160,32 +163,109 @@ object Context extends XLoggable {
   }
 
   /** Everything is based on string. Erasure is out of scope :-( Do we need rewrite EclipseContext completely? */
-  class Listener(val name: String, val f: (String, Context) ⇒ Any)
+  class Listener(val name: String, val f: (String, Context) ⇒ Any) {
+    /** Deliver context event. */
+    def apply(name: String, context: Context): Unit = f(name, context)
+  }
+  /**
+   * Listener with its own queue that is drained outside of the publisher thread.
+   * Events for the same context and key are coalesced within the frame.
+   * Events for the same context are delivered in order, one at a time.
+   */
+  class AsyncListener(eventName: String, callback: (String, Context) ⇒ Any, event: Event) extends Listener(eventName, callback) {
+    /** (Context, key) -> publish time in ns of the oldest coalesced event. Insertion ordered. */
+    protected val pending = mutable.LinkedHashMap[(Context, String), Long]()
+    /** Flag indicating whether the drain is scheduled or running. */
+    protected var scheduled = false
+    private val lock = new Object
+
+    /** Queue context event. */
+    override def apply(name: String, context: Context): Unit = lock.synchronized {
+      val key = (context, name)
+      if (pending.contains(key))
+        event.coalesced.incrementAndGet()
+      else {
+        pending(key) = System.nanoTime()
+        event.depth.incrementAndGet()
+      }
+      if (!scheduled) {
+        scheduled = true
+        event.schedule(this)
+      }
+    }
+    /** Drop queued events. */
+    def cancel() = lock.synchronized {
+      event.depth.addAndGet(-pending.size)
+      pending.clear()
+    }
+    /** Get number of queued events. */
+    def queueDepth = lock.synchronized { pending.size }
+
+    /** Deliver queued events. */
+    protected[Context] def drain() {
+      var batch = next()
+      while (batch.nonEmpty) {
+        batch.foreach {
+          case ((context, name), ts) ⇒
+            event.depth.decrementAndGet()
+            event.record(System.nanoTime() - ts)
+            try callback(name, context)
+            catch { case e: Throwable ⇒ log.error(s"Unable to deliver '${name}' event of ${context}: " + e.getMessage(), e) }
+        }
+        batch = next()
+      }
+    }
+    /** Take queued events or release the drain. */
+    protected def next(): List[((Context, String), Long)] = lock.synchronized {
+      val batch = pending.toList
+      pending.clear()
+      if (batch.isEmpty)
+        scheduled = false
+      batch
+    }
+  }
   class Event {
+    /** Akka execution context. */
+    implicit lazy val ec = App.system.dispatcher
+    /** Number of coalesced events. */
+    val coalesced = new AtomicLong()
+    /** Number of queued events. */
+    val depth = new AtomicInteger()
+    /** Number of delivered asynchronous events. */
+    val delivered = new AtomicLong()
+    /** Delivery latency of the last asynchronous event in ns. */
+    val latencyLast = new AtomicLong()
+    /** Maximum delivery latency of asynchronous events in ns. */
+    val latencyMax = new AtomicLong()
     /** Key listeners. */
     @volatile protected var listeners = immutable.HashMap[String, Seq[Listener]]()
 
     /** Publish context event. */
-    def publish(name: String, context: Context) { listeners.get(name).foreach { value ⇒ value.foreach(_.f(name, context)) } }
+    def publish(name: String, context: Context) { listeners.get(name).foreach { value ⇒ value.foreach(_(name, context)) } }
     /** Publish context event. */
     def publish[T](clazz: Class[T], context: Context) { publish(clazz.getName, context) }
+    /** Get asynchronous delivery statistics. */
+    def statistics() = Event.Statistics(depth.get(), coalesced.get(), delivered.get(),
+      TimeUnit.NANOSECONDS.toMillis(latencyLast.get()), TimeUnit.NANOSECONDS.toMillis(latencyMax.get()))
     /** Subscribe to name events. */
-    def subscribe(name: String, f: (String, Context) ⇒ _): Listener = synchronized {
-      val listener = new Listener(name, f)
-      listeners.get(name) match {
-        case Some(seq) ⇒
-          listeners = listeners.updated(name, seq :+ listener)
-          listener
-        case None ⇒
-          listeners = listeners.updated(name, Seq(listener))
-          listener
-      }
-    }
+    def subscribe(name: String, f: (String, Context) ⇒ _): Listener = add(new Listener(name, f))
     /** Subscribe to class events. */
     def subscribe(clazz: Class[_], f: (String, Context) ⇒ _): Listener =
       subscribe(clazz.getName(), f)
-    /** Unsubscribe listener. */
+    /**
+     * Subscribe to name events with asynchronous delivery.
+     * The context may be already disposed at the time of delivery.
+     */
+    def subscribeAsync(name: String, f: (String, Context) ⇒ _): Listener = add(new AsyncListener(name, f, this))
+    /** Subscribe to class events with asynchronous delivery. */
+    def subscribeAsync(clazz: Class[_], f: (String, Context) ⇒ _): Listener =
+      subscribeAsync(clazz.getName(), f)
+    /** Unsubscribe listener and drop its queued events. */
     def unsubscribe(listener: Listener) = synchronized {
+      listener match {
+        case listener: AsyncListener ⇒ listener.cancel()
+        case _ ⇒
+      }
       listeners.get(listener.name).foreach { seq ⇒
         seq.filterNot(_ == listener) match {
           case Nil ⇒
@@ -195,6 +275,30 @@ object Context extends XLoggable {
         }
       }
     }
+
+    /** Add listener. */
+    protected def add(listener: Listener): Listener = synchronized {
+      listeners.get(listener.name) match {
+        case Some(seq) ⇒
+          listeners = listeners.updated(listener.name, seq :+ listener)
+          listener
+        case None ⇒
+          listeners = listeners.updated(listener.name, Seq(listener))
+          listener
+      }
+    }
+    /** Update delivery statistics. */
+    protected[Context] def record(latency: Long) {
+      delivered.incrementAndGet()
+      latencyLast.set(latency)
+      if (latency > latencyMax.get())
+        latencyMax.set(latency)
+    }
+    /** Schedule listener drain at the end of the frame. */
+    protected[Context] def schedule(listener: AsyncListener) =
+      App.system.scheduler.scheduleOnce(Event.frame) {
+        try listener.drain() catch { case e: Throwable ⇒ log.error("Unable to deliver context events: " + e.getMessage(), e) }
+      }
   }
   /**
    * Publish modify events.
@@ -204,6 +308,13 @@ object Context extends XLoggable {
 
     /** Event implementation. */
     def inner = DI.implementation
+    /** Time window that coalesces asynchronous events. */
+    def frame = DI.frame
+
+    /** Asynchronous delivery statistics. Latency in ms. */
+    case class Statistics(depth: Int, coalesced: Long, delivered: Long, latency: Long, latencyMax: Long) {
+      override def toString = s"queued ${depth}, coalesced ${coalesced}, delivered ${delivered}, latency ${latency}ms, max ${latencyMax}ms"
+    }
 
     /**
      * Dependency injection routines.
@@ -211,6 +322,8 @@ object Context extends XLoggable {
     private object DI extends XDependencyInjection.PersistentInjectable {
       /** Event implementation. */
       lazy val implementation = injectOptional[Event] getOrElse new Event
+      /** Time window that coalesces asynchronous events. */
+      lazy val frame = injectOptional[FiniteDuration]("Context.Event.Frame") getOrElse Duration(16, TimeUnit.MILLISECONDS)
     }
   }
 }
@@ -44,19 +44,22 @@
 package org.digimead.tabuddy.desktop.core.definition.command
 
 import java.util.UUID
-import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.{ ConcurrentHashMap, TimeUnit, TimeoutException }
+import java.util.concurrent.atomic.{ AtomicLong, AtomicReference }
 import org.digimead.digi.lib.aop.log
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.Core
 import org.digimead.tabuddy.desktop.core.definition.Context
 import org.digimead.tabuddy.desktop.core.definition.command.api.XCommand
-import org.eclipse.e4.core.contexts.{ ContextFunction, IEclipseContext, RunAndTrack }
+import org.digimead.tabuddy.desktop.core.support.App
+import org.eclipse.e4.core.contexts.IEclipseContext
+import org.eclipse.e4.core.internal.contexts.EclipseContext
 import org.eclipse.jface.fieldassist.{ ContentProposal, IContentProposal, IContentProposalProvider }
 import scala.collection.JavaConverters.mapAsScalaMapConverter
 import scala.collection.immutable
-import scala.concurrent.Future
+import scala.concurrent.{ Await, Future }
+import scala.concurrent.duration.{ Duration, FiniteDuration }
 import scala.language.implicitConversions
 import scala.util.DynamicVariable
 import scala.util.parsing.input.CharSequenceReader
@@ -74,14 +77,10 @@ class Command extends XLoggable {
   protected val registry = new ConcurrentHashMap[UUID, Command.Descriptor].asScala
   /** Registry with information about all active parsers within application contexts. Unique id of parser -> context information. */
   protected val perContext = new ConcurrentHashMap[UUID, Command.ContextInformation].asScala
-  /** Run and track active branch context listener. */
-  protected lazy val listener = new Command.Listener(actualParserCombinators)
+  /** Active branch context listener. */
+  protected val listener = new Command.Listener(actualParserCombinators)
   private val contextCommandsAccessLock = new Object
 
-  // Listen for actual commands based on active branch.
-  // We add this from the beginning till the end of the component life,
-  // because of code monkeys that designs EclipseContext and forgot to add ability to remove RATs
-  Core.context.runAndTrack(listener)
   log.debug("Alive. Add global active context listener.")
 
   /**
@@ -105,6 +104,7 @@ class Command extends XLoggable {
         val contextParser = parser.copy(uniqueId = UUID.randomUUID()).named(s""""${commandDescriptor.name}"(${commandDescriptor.parserId})""")
         perContext(contextParser.parserId) = Command.ContextInformation(parser.parserId, contextParser, context)
         context.set(Command.contextKey, commandsGeneric.asInstanceOf[immutable.HashMap[UUID, Command.CmdParser]] + (contextParser.parserId -> contextParser))
+        context.set(Command.contextTrieKey, getContextTrie(context) + (commandDescriptor.name, contextParser))
         Some(contextParser.parserId)
       case Some(unknown) ⇒
         log.fatal("Unknown context commands value: " + unknown.getClass())
@@ -114,6 +114,7 @@ class Command extends XLoggable {
         val contextParser = parser.copy(uniqueId = UUID.randomUUID()).named(s""""${commandDescriptor.name}"(${commandDescriptor.parserId})""")
         perContext(contextParser.parserId) = Command.ContextInformation(parser.parserId, contextParser, context)
         context.set(Command.contextKey, immutable.HashMap[UUID, Command.CmdParser](contextParser.parserId -> contextParser))
+        context.set(Command.contextTrieKey, getContextTrie(context) + (commandDescriptor.name, contextParser))
         Some(contextParser.parserId)
     }
     newParserUniqueId
@@ -133,6 +134,11 @@ class Command extends XLoggable {
   def getDescriptor(commandId: UUID) = registry.get(commandId)
   /** Get information for uniqueId of a context parser. */
   def getContextParserInfo(uniqueId: UUID) = perContext.get(uniqueId)
+  /** Get keyword trie with parsers of the context. */
+  def getContextTrie(context: Context): Command.Trie = context.getLocal(Command.contextTrieKey) match {
+    case trie: Command.Trie ⇒ trie
+    case _ ⇒ Command.Trie.empty
+  }
   /** List all registered commands. */
   def registered = registry.values
   /** Parse input. */
@@ -193,6 +199,7 @@ class Command extends XLoggable {
         log.fatal("Unknown context commands keunknowny value: " + unknown.getClass())
       case None ⇒
     }
+    removeFromContextTrie(context, uniqueId)
     perContext.remove(uniqueId)
     listener.changed(Core.context)
   }
@@ -207,6 +214,7 @@ class Command extends XLoggable {
     log.debug(s"Unregister command ${parserId}.")
     val uniqueIdToRemove = perContext.filter { case (uniqueId, information) ⇒ information.parserId == parserId }.map(_._1)
     uniqueIdToRemove.foreach { uniqueId ⇒
+      removeFromContextTrie(perContext.get(uniqueId).map(_.context), uniqueId)
       perContext.remove(uniqueId).foreach { information ⇒
         Option(information.context.get(Command.contextKey)) match {
           case Some(commandsGeneric: immutable.HashMap[_, _]) ⇒
@@ -228,6 +236,21 @@ class Command extends XLoggable {
       throw new IllegalArgumentException(s"Unable to add parser to context: command id ${commandId} not found")
     unregister(commandId)
   }
+
+  /** Remove context parser from the keyword trie of the context. */
+  protected def removeFromContextTrie(context: Context, uniqueId: UUID): Unit = {
+    val trie = getContextTrie(context)
+    val keyword = perContext.get(uniqueId).flatMap(information ⇒ registry.get(information.parserId)).map(_.name)
+    val updated = keyword match {
+      case Some(keyword) ⇒ trie - (keyword, uniqueId)
+      case None ⇒ trie - uniqueId
+    }
+    if (updated ne trie)
+      context.set(Command.contextTrieKey, updated)
+  }
+  /** Remove context parser from the keyword trie of the context. */
+  protected def removeFromContextTrie(context: Option[Context], uniqueId: UUID): Unit =
+    context.foreach(removeFromContextTrie(_, uniqueId))
 }
 
 /**
@@ -239,8 +262,8 @@ object Command extends XLoggable {
   val completionProposal = new DynamicVariable(Seq.empty[CommandParsers#MissingCompletionOrFailure])
   /** Context commands map key. */
   val contextKey = "Commands"
-  /** Context commands composite parser key. */
-  val contextParserKey = "CommandsParser"
+  /** Context commands keyword trie key. */
+  val contextTrieKey = "CommandsTrie"
   /** Singleton identificator. */
   val id = getClass.getSimpleName().dropRight(1)
   /** Command parser implementation. */
@@ -250,6 +273,12 @@ object Command extends XLoggable {
 
   /** Command implementation. */
   def inner = DI.implementation
+  /** Maximum number of memoized inputs per proposal provider. */
+  def proposalCacheSize = DI.proposalCacheSize
+  /** Lifetime of memoized proposals. */
+  def proposalCacheTTL = DI.proposalCacheTTL
+  /** Maximum time to wait for background proposals computation. */
+  def proposalTimeout = DI.proposalTimeout
 
   sealed trait Result
   case class Success(val uniqueId: UUID, val result: Any) extends Result
@@ -281,65 +310,195 @@ object Command extends XLoggable {
     def apply(base: parser.Parser[Any])(implicit descriptor: Descriptor) =
       new CmdParser(descriptor.parserId, base)
   }
-  /** Application wide context listener that rebuild commands. */
-  class Listener(val commandParserCombinators: AtomicReference[parser.Parser[Any]]) extends RunAndTrack() {
+  /**
+   * Context listener that rebuild commands of the context branch.
+   * By default the branch is the application wide active one.
+   * It is an asynchronous Context.Event subscriber, so a burst of
+   * activations and trie updates ends with a single rebuild per frame.
+   */
+  class Listener(val commandParserCombinators: AtomicReference[parser.Parser[Any]],
+    branchLeaf: ⇒ IEclipseContext = Core.context.getActiveLeaf()) {
     private val lock = new Object
-    override def changed(context: IEclipseContext): Boolean = lock.synchronized {
-      log.trace("Update command line parser combinators.")
-      val leaf = Core.context.getActiveLeaf()
-      def getCompositeParsers(context: IEclipseContext): Seq[Option[parser.Parser[Any]]] = {
-        val contextCompositeParser = Option(context.getLocal(Command.contextParserKey).asInstanceOf[Option[parser.Parser[Any]]]).getOrElse {
-          context.set(Command.contextParserKey, new CompositeParserComputation)
-          context.getLocal(Command.contextParserKey).asInstanceOf[Option[parser.Parser[Any]]]
+    /** Tries of the last rebuild. */
+    protected var tries = Seq.empty[Trie]
+    /** Active child, trie and dispose events of all contexts. */
+    protected val subscriptions = Seq(EclipseContext.ACTIVE_CHILD, Command.contextTrieKey, null.asInstanceOf[String]).
+      map(name ⇒ Context.Event.subscribeAsync(name, (_: String, _: Context) ⇒ changed()))
+
+    changed()
+
+    /** Rebuild parser combinators if tries of the active branch are changed. */
+    def changed() {
+      def getTries(context: IEclipseContext): Seq[Trie] = {
+        val contextTrie = context.getLocal(Command.contextTrieKey) match {
+          case trie: Trie if !trie.isEmpty ⇒ Some(trie)
+          case _ ⇒ None
         }
         Option(context.getParent()) match {
-          case Some(parent) ⇒ contextCompositeParser +: getCompositeParsers(parent)
-          case None ⇒ Seq(contextCompositeParser)
+          case Some(parent) ⇒ contextTrie.toSeq ++ getTries(parent)
+          case None ⇒ contextTrie.toSeq
         }
       }
-      getCompositeParsers(leaf).flatten match {
-        case Nil ⇒ commandParserCombinators.set(Command.parser.stubParser)
-        case seq if seq.nonEmpty ⇒ commandParserCombinators.set(seq.reduceLeft[parser.Parser[Any]] { (acc, p) ⇒ acc | p })
+      val actual = App.execNGet { getTries(branchLeaf) }
+      lock.synchronized {
+        if (actual.size != tries.size || !(actual, tries).zipped.forall(_ eq _)) {
+          log.trace("Update command line parser combinators.")
+          tries = actual
+          actual match {
+            case Nil ⇒ commandParserCombinators.set(Command.parser.stubParser)
+            case seq ⇒ commandParserCombinators.set(new Dispatcher(seq))
+          }
+        }
       }
-      true
     }
+    /** Stop listening. */
+    def dispose() = subscriptions.foreach(Context.Event.unsubscribe)
   }
   /** Parser exception that correctly terminate parse sequence. */
   case class ParseException(message: String) extends java.text.ParseException(message, -1)
-  /** ProposalProvider for a text field. */
+  /**
+   * ProposalProvider for a text field.
+   *
+   * Proposals are computed on a background thread as soon as the input changes
+   * and are memoized per input for a short time within the current parser generation.
+   * Parsers may build completions from mutable state like graph list or file system.
+   */
   class ProposalProvider(val actualParserCombinators: AtomicReference[parser.Parser[Any]])
     extends IContentProposalProvider {
+    /** Memoized proposals of the parser generation. */
+    @volatile protected var cache = new ProposalProvider.Cache(actualParserCombinators.get)
+    /** Sequence number of the latest input. */
+    protected val generation = new AtomicLong()
     @volatile protected var input = ""
+    /** Computation for the latest input. */
+    @volatile protected var pending: Option[(String, Future[Array[IContentProposal]])] = None
 
     /** Set input for current proposal. */
-    def setInput(text: String) = input = text
-    /** Return an array of content proposals representing the valid proposals for a field. */
+    def setInput(text: String) = {
+      input = text
+      val current = generation.incrementAndGet()
+      if (getCache().get(text).isEmpty)
+        schedule(text, current)
+    }
+    /**
+     * Return an array of content proposals representing the valid proposals for a field.
+     * The input is never parsed on the calling thread. If the background computation is too slow,
+     * there are no proposals this time and the result is memoized for the next request.
+     */
     def getProposals(contents: String, position: Int): Array[IContentProposal] = {
-      Command.parse(input, actualParserCombinators.get) match {
-        case Command.Success(uniqueId, result) ⇒
-          Array()
-        case Command.MissingCompletionOrFailure(hints, message) ⇒
-          {
-            hints.map {
-              case Hint(Some(label), description, list) ⇒
-                val completionList = list.filter(_.nonEmpty)
-                if (completionList.size == 1)
-                  completionList.map(completion ⇒ new ContentProposal(completion, label, description getOrElse null))
-                else
-                  completionList.map(completion ⇒ new ContentProposal(completion, s"${label}(${completion})", description getOrElse null))
-              case Hint(None, description, list) ⇒
-                list.filter(_.nonEmpty).map(completion ⇒ new ContentProposal(completion, completion, description getOrElse null))
-            }
-          }.flatten.toArray
-        case Command.Failure(message) ⇒
-          log.fatal(message)
-          Array()
-        case Command.Error(message) ⇒
-          log.fatal(message)
-          Array()
+      val text = input
+      getCache().get(text) getOrElse {
+        val future = pending match {
+          case Some((pendingText, future)) if pendingText == text ⇒ future
+          case _ ⇒ schedule(text, generation.get())
+        }
+        try Await.result(future, proposalTimeout)
+        catch { case e: TimeoutException ⇒ Array[IContentProposal]() }
+      }
+    }
+
+    /** Compute proposals for the input in the background. */
+    protected def schedule(text: String, current: Long): Future[Array[IContentProposal]] = {
+      val future = Future {
+        if (generation.get() == current) // drop stale request
+          getProposals(text)
+        else
+          Array[IContentProposal]()
+      }(App.system.dispatcher)
+      pending = Some((text, future))
+      future
+    }
+    /** Get cache for the actual parser generation. */
+    protected def getCache(): ProposalProvider.Cache = {
+      val parser = actualParserCombinators.get
+      val current = cache
+      if (current.parser eq parser) current else {
+        val updated = new ProposalProvider.Cache(parser)
+        cache = updated
+        updated
+      }
+    }
+    /** Compute and memoize proposals. */
+    protected def getProposals(text: String): Array[IContentProposal] = {
+      val cache = getCache()
+      cache.get(text) getOrElse {
+        val proposals = if (cache.isFailedPrefix(text)) Array[IContentProposal]() else Command.parse(text, cache.parser) match {
+          case Command.Success(uniqueId, result) ⇒
+            Array[IContentProposal]()
+          case Command.MissingCompletionOrFailure(hints, message) ⇒
+            {
+              hints.map {
+                case Hint(Some(label), description, list) ⇒
+                  val completionList = list.filter(_.nonEmpty)
+                  if (completionList.size == 1)
+                    completionList.map(completion ⇒ new ContentProposal(completion, label, description getOrElse null))
+                  else
+                    completionList.map(completion ⇒ new ContentProposal(completion, s"${label}(${completion})", description getOrElse null))
+                case Hint(None, description, list) ⇒
+                  list.filter(_.nonEmpty).map(completion ⇒ new ContentProposal(completion, completion, description getOrElse null))
+              }
+            }.flatten.toArray[IContentProposal]
+          case Command.Failure(message) ⇒
+            if (message.startsWith(Dispatcher.unknownCommand))
+              cache.failed(text)
+            log.fatal(message)
+            Array[IContentProposal]()
+          case Command.Error(message) ⇒
+            log.fatal(message)
+            Array[IContentProposal]()
+        }
+        cache.put(text, proposals)
+        proposals
       }
     }
   }
+  object ProposalProvider {
+    /**
+     * Proposals memoized per input for the specific parser.
+     */
+    class Cache(val parser: Command.parser.Parser[Any]) {
+      /** Inputs without any matching command keyword, so any appended text has no command too. */
+      protected val failedPrefixes = new java.util.concurrent.ConcurrentLinkedQueue[String]()
+      /** Proposals lifetime in ns. */
+      protected val ttl = Command.proposalCacheTTL.toNanos
+      /** Proposals with the creation time per input. */
+      protected val proposals = new java.util.LinkedHashMap[String, (Long, Array[IContentProposal])](16, 0.75f, true) {
+        override protected def removeEldestEntry(eldest: java.util.Map.Entry[String, (Long, Array[IContentProposal])]) =
+          size() > Command.proposalCacheSize
+      }
+
+      /** Register input that has no matching command keyword. */
+      def failed(text: String) = if (text.nonEmpty) {
+        failedPrefixes.add(text)
+        if (failedPrefixes.size() > Command.proposalCacheSize)
+          failedPrefixes.poll()
+      }
+      /** Get memoized proposals. */
+      def get(text: String): Option[Array[IContentProposal]] = proposals.synchronized {
+        Option(proposals.get(text)) match {
+          case Some((ts, value)) if System.nanoTime() - ts < ttl ⇒
+            Some(value)
+          case Some(expired) ⇒
+            proposals.remove(text)
+            None
+          case None ⇒
+            None
+        }
+      }
+      /** Check whether the input extends one without matching command keyword. */
+      def isFailedPrefix(text: String): Boolean = {
+        val iterator = failedPrefixes.iterator()
+        while (iterator.hasNext()) {
+          val prefix = iterator.next()
+          if (text.length() > prefix.length() && text.startsWith(prefix))
+            return true
+        }
+        false
+      }
+      /** Memoize proposals. */
+      def put(text: String, value: Array[IContentProposal]) = proposals.synchronized { proposals.put(text, (System.nanoTime(), value)) }
+    }
+  }
   /** Completion hint. */
   abstract class Hint {
     /** Completion label. */
@@ -402,15 +561,100 @@ object Command extends XLoggable {
       }
     }
   }
-  /** Computation that calculates composite parser for current context. */
-  class CompositeParserComputation extends ContextFunction {
-    override def compute(context: IEclipseContext, fnKey: String): Option[parser.Parser[Any]] =
-      Option(context.getLocal(Command.contextKey)) match {
-        case Some(commands: immutable.HashMap[_, _]) if commands.nonEmpty ⇒
-          Some(commands.values.asInstanceOf[Iterable[CmdParser]].reduceLeft[parser.Parser[Any]] { (acc, p) ⇒ acc | p })
-        case _ ⇒
-          None
+  /**
+   * Parser that runs only command parsers with keyword compatible with the input.
+   * Parsers of leaf contexts go first, as with the plain alternation.
+   */
+  class Dispatcher(val tries: Seq[Trie]) extends parser.Parser[Any] {
+    named("Dispatcher")
+    def apply(in: parser.Input): parser.ParseResult[Any] = {
+      val source = in.source
+      val end = if (parser.isCompletionRequest(source)) source.length() - 1 else source.length()
+      val text = source.subSequence(math.min(in.offset, end), end)
+      tries.flatMap(_.candidates(text)) match {
+        case Seq() ⇒
+          parser.Failure(Dispatcher.unknownCommand + " `" + text + "'", in)
+        case candidates ⇒
+          candidates.reduceLeft[parser.Parser[Any]] { (acc, p) ⇒ acc | p }(in)
+      }
+    }
+  }
+  /**
+   * Immutable trie with command parsers indexed by command keyword.
+   */
+  class Trie private (val parsers: immutable.Seq[(Long, CmdParser)], val children: immutable.Map[Char, Trie]) {
+    /** Add parser with the keyword. */
+    def +(keyword: String, parser: CmdParser): Trie = add(keyword, 0, (Trie.sequence.incrementAndGet(), parser))
+    /** Remove parser with the keyword. */
+    def -(keyword: String, uniqueId: UUID): Trie = remove(keyword, 0, uniqueId)
+    /** Remove parser regardless of the keyword. */
+    def -(uniqueId: UUID): Trie = {
+      val updatedParsers = parsers.filterNot(_._2.parserId == uniqueId)
+      val updatedChildren = children.map { case (char, child) ⇒ (char, child - uniqueId) }.filterNot(_._2.isEmpty)
+      if (updatedParsers.size == parsers.size && updatedChildren.size == children.size &&
+        updatedChildren.forall { case (char, child) ⇒ child eq children(char) }) this
+      else new Trie(updatedParsers, updatedChildren)
+    }
+    /** Get parsers which keyword is a prefix of the text or which keyword starts with the text. */
+    def candidates(text: CharSequence): Seq[CmdParser] = {
+      val result = Seq.newBuilder[(Long, CmdParser)]
+      var node: Option[Trie] = Some(this)
+      var index = 0
+      while (node.nonEmpty && index < text.length()) {
+        result ++= node.get.parsers
+        node = node.get.children.get(text.charAt(index))
+        index += 1
+      }
+      node.foreach(_.collect(result))
+      result.result.sortBy(_._1).map(_._2)
+    }
+    /** Check whether the trie is empty. */
+    def isEmpty = parsers.isEmpty && children.isEmpty
+    /** Number of parsers in trie. */
+    def size: Int = parsers.size + children.values.map(_.size).sum
+
+    /** Add entry to the node at keyword(index). */
+    protected def add(keyword: String, index: Int, entry: (Long, CmdParser)): Trie =
+      if (index == keyword.length())
+        new Trie(parsers :+ entry, children)
+      else {
+        val char = keyword.charAt(index)
+        new Trie(parsers, children.updated(char, children.getOrElse(char, Trie.empty).add(keyword, index + 1, entry)))
+      }
+    /** Collect all entries of the subtree. */
+    protected def collect(builder: scala.collection.mutable.Builder[(Long, CmdParser), _]): Unit = {
+      builder ++= parsers
+      children.values.foreach(_.collect(builder))
+    }
+    /** Remove entry from the node at keyword(index). */
+    protected def remove(keyword: String, index: Int, uniqueId: UUID): Trie =
+      if (index == keyword.length()) {
+        val updated = parsers.filterNot(_._2.parserId == uniqueId)
+        if (updated.size == parsers.size) this else new Trie(updated, children)
+      } else {
+        val char = keyword.charAt(index)
+        children.get(char) match {
+          case Some(child) ⇒
+            val updated = child.remove(keyword, index + 1, uniqueId)
+            if (updated eq child) this
+            else if (updated.isEmpty) new Trie(parsers, children - char)
+            else new Trie(parsers, children.updated(char, updated))
+          case None ⇒
+            this
+        }
       }
+
+    override def toString = s"Command.Trie(${size})"
+  }
+  object Dispatcher {
+    /** Failure message prefix for input without matching command keyword. */
+    val unknownCommand = "unknown command"
+  }
+  object Trie {
+    /** Empty trie. */
+    val empty = new Trie(immutable.Seq.empty, immutable.Map.empty)
+    /** Insertion sequence that preserves order of parsers within context. */
+    val sequence = new AtomicLong()
   }
   /**
    * Dependency injection routines.
@@ -420,5 +664,11 @@ object Command extends XLoggable {
     lazy val implementation = injectOptional[Command] getOrElse new Command
     /** Parser implementation. */
     lazy val parser = injectOptional[CommandParsers] getOrElse new CommandParsers
+    /** Maximum number of memoized inputs per proposal provider. */
+    lazy val proposalCacheSize = injectOptional[Int]("Command.ProposalCacheSize") getOrElse 256
+    /** Lifetime of memoized proposals. */
+    lazy val proposalCacheTTL = injectOptional[FiniteDuration]("Command.ProposalCacheTTL") getOrElse Duration(2, TimeUnit.SECONDS)
+    /** Maximum time to wait for background proposals computation. */
+    lazy val proposalTimeout = injectOptional[FiniteDuration]("Command.ProposalTimeout") getOrElse Duration(200, TimeUnit.MILLISECONDS)
   }
 }
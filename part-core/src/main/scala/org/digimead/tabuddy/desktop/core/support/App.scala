@@ -99,8 +99,8 @@ object App {
 
   /** App implementation. */
   def inner: App = DI.implementation
-  /** Event thread delay in ms. */
-  def eventThreadDelay = DI.eventThreadDelay
+  /** Time budget of the event thread queue drain in ms. */
+  def eventThreadBudget = DI.eventThreadBudget
   /** Get UI detection timeout */
   // I don't want that this method foul autocompleters
   protected[support] def UIDetectionTimeout = DI.UIDetectionTimeout
@@ -301,8 +301,8 @@ object App {
    * Dependency injection routines.
    */
   private object DI extends XDependencyInjection.PersistentInjectable {
-    /** Event thread delay in ms. */
-    lazy val eventThreadDelay = injectOptional[Int]("Core.eventThreadDelay") getOrElse 0
+    /** Time budget of the event thread queue drain in ms. */
+    lazy val eventThreadBudget = injectOptional[Int]("Core.eventThreadBudget") getOrElse 20
     /** App implementation. */
     lazy val implementation = injectOptional[App] getOrElse new App
     /** UI detection timeout. */
@@ -43,24 +43,65 @@
 
 package org.digimead.tabuddy.desktop.core.support.app
 
-import java.util.concurrent.ExecutionException
-import java.util.concurrent.atomic.AtomicLong
-import java.util.concurrent.{ Exchanger, TimeUnit, TimeoutException }
+import java.util.concurrent.atomic.{ AtomicBoolean, AtomicInteger, AtomicLong }
+import java.util.concurrent.{ ConcurrentHashMap, ConcurrentLinkedQueue, ExecutionException, TimeUnit, TimeoutException }
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.support.App
 import org.digimead.tabuddy.desktop.core.support.Timeout
+import scala.concurrent.duration.Duration
+import scala.concurrent.{ Await, Future, Promise }
 
 trait Thread {
   this: Generic with XLoggable ⇒
-  /** Timestamp with last exec request. */
-  protected val eventThreadLastEvent = new AtomicLong(System.currentTimeMillis())
+  /** Runnables that are waiting for the event thread. */
+  protected val eventThreadQueue = new ConcurrentLinkedQueue[EventThreadTask]()
+  /** Number of runnables in the event thread queue. */
+  protected val eventThreadQueueSize = new AtomicInteger()
+  /** Flag indicating whether the queue drain is posted to the display. */
+  protected val eventThreadDrainPosted = new AtomicBoolean()
+  /** Coalescing key -> the latest runnable. */
+  protected val eventThreadCoalesced = new ConcurrentHashMap[AnyRef, Runnable]()
+  /** Queue latency of the last executed runnable in ns. */
+  protected val eventThreadLatencyLast = new AtomicLong()
+  /** Maximum queue latency of executed runnables in ns. */
+  protected val eventThreadLatencyMax = new AtomicLong()
+  /** Drain the event thread queue within the frame budget. */
+  protected val eventThreadDrain = new Runnable {
+    def run {
+      // Allow to post the next drain, for example from a nested event loop.
+      eventThreadDrainPosted.set(false)
+      val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(App.eventThreadBudget)
+      var task = eventThreadQueue.poll()
+      while (task != null) {
+        eventThreadQueueSize.decrementAndGet()
+        val latency = System.nanoTime() - task.timestamp
+        eventThreadLatencyLast.set(latency)
+        if (latency > eventThreadLatencyMax.get())
+          eventThreadLatencyMax.set(latency)
+        // The runnable may spin a nested event loop, for example a modal dialog.
+        // Post the next drain beforehand so that the nested loop processes the rest of the queue.
+        if (!eventThreadQueue.isEmpty())
+          eventThreadSchedule()
+        try task.runnable.run()
+        catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
+        task = if (System.nanoTime() < deadline) eventThreadQueue.poll() else null
+      }
+      if (!eventThreadQueue.isEmpty())
+        eventThreadSchedule()
+    }
+  }
 
-  /** Delay the event thread workflow. */
-  // Even 0 ms provides small delay that is enough.
-  def eventThreadDelay() = eventThreadLastEvent.synchronized {
-    val now = System.currentTimeMillis()
-    val last = eventThreadLastEvent.getAndSet(now)
-    Thread.sleep(math.max(App.eventThreadDelay - (now - last), 0))
+  /** Get number of runnables that are waiting for the event thread. */
+  def eventThreadQueueDepth: Int = eventThreadQueueSize.get()
+  /** Get queue latency of the last executed runnable in ms. */
+  def eventThreadQueueLatency: Long = TimeUnit.NANOSECONDS.toMillis(eventThreadLatencyLast.get())
+  /** Get maximum queue latency of executed runnables in ms. */
+  def eventThreadQueueLatencyMax: Long = TimeUnit.NANOSECONDS.toMillis(eventThreadLatencyMax.get())
+  /** Add a runnable to the event thread queue. */
+  def eventThreadPost(runnable: Runnable) {
+    eventThreadQueue.offer(new EventThreadTask(runnable, System.nanoTime()))
+    eventThreadQueueSize.incrementAndGet()
+    eventThreadSchedule()
   }
   /** Execute a runnable in the event thread. */
   def exec[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): Unit =
@@ -76,25 +117,17 @@ trait Thread {
       catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
     } else execAsync({ f })
   /** Asynchronously execute a runnable in the event thread. */
-  def execAsync[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): Unit = {
-    eventThreadDelay()
-    if (duration == App.ShortRunnable && debug) {
-      val t = new Throwable(s"Entry point from ${java.lang.Thread.currentThread.getName()}.")
-      display.asyncExec(new Runnable {
-        def run = try {
-          val ts = System.currentTimeMillis()
-          f
-          val duration = System.currentTimeMillis() - ts
-          if (duration > 500)
-            log.error(s"Too heavy operation: ${duration}ms.", t)
-        } catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
-      })
-    } else {
-      display.asyncExec(new Runnable {
-        def run = try { f } catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
+  def execAsync[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): Unit =
+    eventThreadPost(eventThreadRunnable(f))
+  /**
+   * Asynchronously execute a runnable in the event thread.
+   * Runnables with the same key that are still waiting are collapsed into the latest one.
+   */
+  def execAsyncCoalesced[T](key: AnyRef)(f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): Unit =
+    if (eventThreadCoalesced.put(key, eventThreadRunnable(f)) == null)
+      eventThreadPost(new Runnable {
+        def run = Option(eventThreadCoalesced.remove(key)).foreach(_.run())
       })
-    }
-  }
   /** Execute a runnable in the event thread and return a result or an exception. */
   def execNGet[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): T = try {
     if (isEventLoop) {
@@ -113,19 +146,26 @@ trait Thread {
       throw new ExecutionException(e)
   }
   /** Asynchronously execute a runnable in the event thread and return a result or an exception. */
-  def execNGetAsync[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): T = {
-    eventThreadDelay()
-    val exchanger = new Exchanger[Either[Throwable, T]]()
-    if (duration == App.ShortRunnable && debug) {
+  def execNGetAsync[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): T =
+    Await.result(execFuture(f), if (duration == App.ShortRunnable) Timeout.short else Duration.Inf)
+  /**
+   * Execute a runnable in the event thread and return a future with a result or an exception.
+   * The event thread completes the future without waiting for the caller.
+   */
+  def execFuture[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): Future[T] = {
+    val promise = Promise[T]()
+    if (isEventLoop)
+      try promise.success(f) catch { case e: Throwable ⇒ promise.failure(e) }
+    else if (duration == App.ShortRunnable && debug) {
       val t = new Throwable(s"Entry point from ${java.lang.Thread.currentThread.getName()}.")
-      display.asyncExec(new Runnable {
+      eventThreadPost(new Runnable {
         def run = {
           val ts = System.currentTimeMillis()
-          try exchanger.exchange(Right(f), 100, TimeUnit.MILLISECONDS)
+          try promise.success(f)
           catch {
             case e: Throwable ⇒
-              log.error("Unable to complete execNGetAsync call: " + e, t)
-              exchanger.exchange(Left(e), 100, TimeUnit.MILLISECONDS)
+              log.error("Unable to complete execFuture call: " + e, t)
+              promise.failure(e)
           }
           val duration = System.currentTimeMillis() - ts
           if (duration > 500)
@@ -133,69 +173,56 @@ trait Thread {
         }
       })
     } else {
-      display.asyncExec(new Runnable {
-        def run = try exchanger.exchange(Right(f), 100, TimeUnit.MILLISECONDS)
-        catch { case e: Throwable ⇒ exchanger.exchange(Left(e), 100, TimeUnit.MILLISECONDS) }
+      eventThreadPost(new Runnable {
+        def run = try promise.success(f) catch { case e: Throwable ⇒ promise.failure(e) }
       })
     }
-    {
-      if (duration == App.ShortRunnable)
-        exchanger.exchange(null, Timeout.short.toMillis, TimeUnit.MILLISECONDS)
-      else
-        exchanger.exchange(null)
-    } match {
-      case Left(e) ⇒
-        throw e
-      case Right(r) ⇒
-        r
-    }
+    promise.future
   }
   /** Asynchronously execute a runnable in the event thread with delay */
   def execWithTimer[T](milliseconds: Int)(f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration = App.ShortRunnable): Unit = {
-    eventThreadDelay()
-    if (duration == App.ShortRunnable && debug) {
-      val t = new Throwable(s"Entry point from ${java.lang.Thread.currentThread.getName()}.")
-      display.asyncExec(new Runnable {
-        def run = display.timerExec(milliseconds, new Runnable {
-          def run = try {
-            val ts = System.currentTimeMillis()
-            f
-            val duration = System.currentTimeMillis() - ts
-            if (duration > 500)
-              log.error(s"Too heavy operation: ${duration}ms.", t)
-          } catch {
-            case e: Throwable ⇒
-              log.error("Unable to complete execWithTimer call: " + e, t)
-              log.error("Event thread exception: " + e, e)
-          }
-        })
-      })
-    } else {
-      display.asyncExec(new Runnable {
-        def run = display.timerExec(milliseconds, new Runnable {
-          def run = try { f } catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
-        })
-      })
-    }
+    val runnable = eventThreadRunnable(f)
+    eventThreadPost(new Runnable {
+      def run = display.timerExec(milliseconds, runnable)
+    })
   }
   /**
    * Asynchronously execute a runnable in the event thread with timeout and return a result or an exception
    * NB This routine block the event thread, so it would be possible to freeze the application for a few hours.
    */
-  @throws[TimeoutException]("If the specified waiting time elapses before another thread enters the exchange")
+  @throws[TimeoutException]("If the specified waiting time elapses before the runnable is completed")
   def execNGetAsyncWithTimeout[T](timeout: Int, unit: TimeUnit = TimeUnit.MILLISECONDS)(f: ⇒ T): T = {
     if (isEventLoop)
       throw new IllegalStateException("Unable to spawn execNGetAsync runnable with timeout within event thread.")
-    val exchanger = new Exchanger[Either[Throwable, T]]()
-    display.asyncExec(new Runnable {
-      def run = try exchanger.exchange(Right(f), 100, TimeUnit.MILLISECONDS)
-      catch { case e: Throwable ⇒ exchanger.exchange(Left(e), 100, TimeUnit.MILLISECONDS) }
-    })
-    exchanger.exchange(null, timeout, unit) match {
-      case Left(e) ⇒
+    Await.result(execFuture(f), Duration(timeout, unit))
+  }
+
+  /** Wrap f with exception handler and debug checks. */
+  protected def eventThreadRunnable[T](f: ⇒ T)(implicit duration: App.EventLoopRunnableDuration): Runnable =
+    if (duration == App.ShortRunnable && debug) {
+      val t = new Throwable(s"Entry point from ${java.lang.Thread.currentThread.getName()}.")
+      new Runnable {
+        def run = try {
+          val ts = System.currentTimeMillis()
+          f
+          val duration = System.currentTimeMillis() - ts
+          if (duration > 500)
+            log.error(s"Too heavy operation: ${duration}ms.", t)
+        } catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
+      }
+    } else {
+      new Runnable {
+        def run = try { f } catch { case e: Throwable ⇒ log.error("Event thread exception: " + e, e) }
+      }
+    }
+  /** Post the queue drain to the display if it is not posted yet. */
+  protected def eventThreadSchedule() = if (eventThreadDrainPosted.compareAndSet(false, true))
+    try display.asyncExec(eventThreadDrain) catch {
+      case e: Throwable ⇒
+        eventThreadDrainPosted.set(false)
         throw e
-      case Right(r) ⇒
-        r
     }
-  }
+
+  /** Runnable with the enqueue timestamp. */
+  protected class EventThreadTask(val runnable: Runnable, val timestamp: Long)
 }
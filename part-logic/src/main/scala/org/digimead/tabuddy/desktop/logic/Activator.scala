@@ -100,6 +100,8 @@ class Activator extends BundleActivator with XLoggable {
           // Initialization complete.
           App.watch(context).off()
         } on {
+          // Warm up script compilers in background
+          Future { Script.warmUp() } onFailure { case e: Throwable ⇒ log.error("Unable to warm up script compilers: " + e.getMessage(), e) }
           // Execute autoexec
           val autoexec = new File(Logic.scriptContainer, "autoexec.scala")
           if (autoexec.exists()) try {
@@ -50,6 +50,7 @@ import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.Core
 import org.digimead.tabuddy.desktop.core.console.Console
+import org.digimead.tabuddy.desktop.core.keyring.KeyRing
 import org.digimead.tabuddy.desktop.core.support.App
 import org.digimead.tabuddy.desktop.core.support.Timeout
 import org.digimead.tabuddy.desktop.core.ui.UI
@@ -87,6 +88,9 @@ class Logic extends akka.actor.Actor with XLoggable {
     App.watch(Activator, UI, this).always().
       makeAfterStart('logic_Logic__onGUIStarted) { onGUIStarted() }.
       makeBeforeStop('logic_Logic__onGUIStopped) { onGUIStopped() }.sync()
+  if (App.watch(KeyRing, this).hooks.isEmpty)
+    App.watch(KeyRing, this).always().
+      makeBeforeStop('logic_Logic__onKeyRingStopped) { GraphMarker.serializationKeysWipe() }.sync()
 
   /** Is called asynchronously after 'actor.stop()' is invoked. */
   override def postStop() = {
@@ -97,27 +97,29 @@ object CommandGraphNew extends XLoggable {
           exchanger.exchange(null) match {
             case Operation.Result.OK(Some(graph), message) ⇒
               val marker = GraphMarker(graph)
-              options.foreach(_ match {
-                case DigestParser.Argument("digest", Some(parameters)) ⇒
-                  marker.digest = XGraphMarker.Digest(Some(true), Some(Map(marker.graphPath.toURI() -> parameters)))
-                case DigestParser.Argument("digest", None) ⇒
-                  marker.digest = XGraphMarker.Digest(None, None)
-                case EncryptionParser.Argument("container", Some(parameters)) ⇒
-                  marker.containerEncryption = XGraphMarker.Encryption(Map(marker.graphPath.toURI() -> parameters))
-                case EncryptionParser.Argument("container", None) ⇒
-                  marker.containerEncryption = XGraphMarker.Encryption(Map())
-                case EncryptionParser.Argument("content", Some(parameters)) ⇒
-                  marker.contentEncryption = XGraphMarker.Encryption(Map(marker.graphPath.toURI() -> parameters))
-                case EncryptionParser.Argument("content", None) ⇒
-                  marker.contentEncryption = XGraphMarker.Encryption(Map())
-                case SignatureParser.Argument("signature", Some(parameters)) ⇒
-                  marker.signature = XGraphMarker.Signature(Some(UUID.randomUUID()), Some(Map(marker.graphPath.toURI() -> parameters)))
-                case SignatureParser.Argument("signature", None) ⇒
-                  marker.signature = XGraphMarker.Signature(None, None)
-                case SerializationTypeParser.Argument("serialization", serialization) ⇒ // skip
-                case unknown ⇒
-                  throw new IllegalArgumentException("Unknown parameter: " + unknown)
-              })
+              marker.batch {
+                options.foreach(_ match {
+                  case DigestParser.Argument("digest", Some(parameters)) ⇒
+                    marker.digest = XGraphMarker.Digest(Some(true), Some(Map(marker.graphPath.toURI() -> parameters)))
+                  case DigestParser.Argument("digest", None) ⇒
+                    marker.digest = XGraphMarker.Digest(None, None)
+                  case EncryptionParser.Argument("container", Some(parameters)) ⇒
+                    marker.containerEncryption = XGraphMarker.Encryption(Map(marker.graphPath.toURI() -> parameters))
+                  case EncryptionParser.Argument("container", None) ⇒
+                    marker.containerEncryption = XGraphMarker.Encryption(Map())
+                  case EncryptionParser.Argument("content", Some(parameters)) ⇒
+                    marker.contentEncryption = XGraphMarker.Encryption(Map(marker.graphPath.toURI() -> parameters))
+                  case EncryptionParser.Argument("content", None) ⇒
+                    marker.contentEncryption = XGraphMarker.Encryption(Map())
+                  case SignatureParser.Argument("signature", Some(parameters)) ⇒
+                    marker.signature = XGraphMarker.Signature(Some(UUID.randomUUID()), Some(Map(marker.graphPath.toURI() -> parameters)))
+                  case SignatureParser.Argument("signature", None) ⇒
+                    marker.signature = XGraphMarker.Signature(None, None)
+                  case SerializationTypeParser.Argument("serialization", serialization) ⇒ // skip
+                  case unknown ⇒
+                    throw new IllegalArgumentException("Unknown parameter: " + unknown)
+                })
+              }
               GraphMarker.bind(marker)
               log.info(s"Operation completed successfully.")
               marker
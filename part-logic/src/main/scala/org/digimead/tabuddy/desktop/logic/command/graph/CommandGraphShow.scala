@@ -61,6 +61,7 @@ object CommandGraphShow {
   private val fullArg = "-full"
   private val treeArg = "-tree"
   private val bindedArg = "-binded"
+  private val locksArg = "-locks"
   /** Akka execution context. */
   implicit lazy val ec = App.system.dispatcher
   /** Console converter. */
@@ -106,6 +107,9 @@ object CommandGraphShow {
             marker.safeRead(_.graph).model.eDump(!options.contains(fullArg))
         case Some(this.bindedArg) ⇒
           (true, GraphMarker.list().map(GraphMarker(_)).filter(_.graphIsOpen()))
+        case Some(this.locksArg) ⇒
+          s"Contended graph marker lock acquisitions: ${Console.BWHITE}${GraphMarker.lockContention.get()}${Console.RESET}\n" +
+            s"Graph marker writes: ${Console.BWHITE}${GraphMarker.markerWrites.get()}${Console.RESET}"
         case None ⇒
           (false, GraphMarker.list().map(GraphMarker(_)))
       }
@@ -122,6 +126,8 @@ object CommandGraphShow {
 
     if (alreadyDefinedOptions.isEmpty)
       options = (bindedArg into { result ⇒ nop ^^^ { bindedArg } }) +: options
+    if (alreadyDefinedOptions.isEmpty)
+      options = (locksArg into { result ⇒ nop ^^^ { locksArg } }) +: options
     if (alreadyDefinedOptions.isEmpty)
       options = (fullArg into { result ⇒
         sp ~> (optionParser(alreadyDefinedOptions :+ result) { tail })
@@ -49,10 +49,12 @@ import java.util.concurrent.{ CancellationException, Exchanger }
 import org.digimead.digi.lib.aop.log
 import org.digimead.digi.lib.log.api.XLoggable
 import org.digimead.tabuddy.desktop.core.command.PathParser
+import org.digimead.tabuddy.desktop.core.console.Console
 import org.digimead.tabuddy.desktop.core.definition.Operation
 import org.digimead.tabuddy.desktop.core.definition.command.Command
 import org.digimead.tabuddy.desktop.core.support.App
 import org.digimead.tabuddy.desktop.logic.operation.script.OperationScriptEvaluate
+import org.digimead.tabuddy.desktop.logic.script.Cache
 import org.digimead.tabuddy.desktop.logic.{ Logic, Messages }
 import org.eclipse.core.runtime.jobs.Job
 import scala.concurrent.Future
@@ -62,6 +64,7 @@ import scala.concurrent.Future
  */
 object CommandScriptRun extends XLoggable {
   import Command.parser._
+  private val statsArg = "-stats"
   /** Akka execution context. */
   implicit lazy val ec = App.system.dispatcher
   /** Command description. */
@@ -91,10 +94,14 @@ object CommandScriptRun extends XLoggable {
             case other ⇒
               throw new RuntimeException(s"Unable to complete operation: ${other}.")
           }
+        case this.statsArg ⇒
+          val stats = Cache.storage.stats()
+          s"Script cache memory hits/misses: ${Console.BWHITE}${stats.hitCount()}/${stats.missCount()}${Console.RESET}\n" +
+            s"Script cache persistent hits/misses: ${Console.BWHITE}${Cache.persistentHits.get()}/${Cache.persistentMisses.get()}${Console.RESET}"
       }
     })
   /** Command parser. */
-  lazy val parser = Command.CmdParser(descriptor.name ~ sp ~> pathParser)
+  lazy val parser = Command.CmdParser(descriptor.name ~ sp ~> ((statsArg into { result ⇒ nop ^^^ { statsArg } }) | pathParser))
   /** Path argument parser. */
   protected def pathParser = PathParser(() ⇒ Logic.graphContainer, () ⇒ "script location",
     () ⇒ Some(s"path to script file")) { f ⇒ f.canRead() && !f.getName().startsWith(".") }
@@ -44,7 +44,6 @@
 package org.digimead.tabuddy.desktop.logic.command.signature
 
 import org.bouncycastle.openpgp.PGPUtil
-import org.bouncycastle.openpgp.operator.bc.{ BcPBESecretKeyDecryptorBuilder, BcPGPDigestCalculatorProvider }
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter
 import org.digimead.tabuddy.desktop.core.definition.command.Command
 import org.digimead.tabuddy.desktop.core.keyring.KeyRing
@@ -62,8 +61,7 @@ class SimpleSignatureAdapter extends SignatureAdapter {
   /** Create parser for SimpleSignature configuration. */
   def apply(tag: String): Command.parser.Parser[Any] = "" ^^^ {
     val publicKey = ID.thisPublicSigningKey
-    val privateKey = ID.thisSecretSigningKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).
-      build(KeyRing.defaultPassPhrase.toCharArray()))
+    val privateKey = KeyRing.getPGPPrivateKey(ID.thisSecretSigningKey, KeyRing.defaultPassPhrase)
     val converter = new JcaPGPKeyConverter().setProvider("BC")
     val parameters = SimpleSignature(converter.getPublicKey(publicKey), converter.getPrivateKey(privateKey))
     SignatureParser.Argument(tag, Some(parameters))
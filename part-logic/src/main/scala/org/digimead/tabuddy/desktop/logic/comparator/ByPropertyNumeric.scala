@@ -113,6 +113,44 @@ class ByPropertyNumeric extends XComparator[XComparator.Argument] with XLoggable
       case _ ⇒
         throw new IllegalArgumentException("Unable to compare unsupported properties with type " + ptype)
     }
+  /** Returns the sort key of element's properties */
+  override def key[T <: AnyRef with java.io.Serializable](propertyId: Symbol, ptype: PropertyType[T], argument: Option[XComparator.Argument]): Option[XComparator.Key] =
+    ptype.typeSymbol match {
+      case 'Double | 'Float ⇒ Some(new XComparator.Key {
+        def extract(elements: Array[Element]) = {
+          val present = new Array[Boolean](elements.length)
+          val values = new Array[Double](elements.length)
+          for (i ← 0 until elements.length) elements(i).eGet(propertyId, ptype.typeSymbol).map(_.get) match {
+            case Some(n: java.lang.Number) ⇒ present(i) = true; values(i) = n.doubleValue()
+            case _ ⇒
+          }
+          new XComparator.Keys {
+            def compare(a: Int, b: Int) = if (present(a) && present(b))
+              java.lang.Double.compare(values(a), values(b))
+            else
+              java.lang.Boolean.compare(present(a), present(b))
+          }
+        }
+      })
+      case 'Byte | 'Integer | 'Long | 'Short ⇒ Some(new XComparator.Key {
+        def extract(elements: Array[Element]) = {
+          val present = new Array[Boolean](elements.length)
+          val values = new Array[Long](elements.length)
+          for (i ← 0 until elements.length) elements(i).eGet(propertyId, ptype.typeSymbol).map(_.get) match {
+            case Some(n: java.lang.Number) ⇒ present(i) = true; values(i) = n.longValue()
+            case _ ⇒
+          }
+          new XComparator.Keys {
+            def compare(a: Int, b: Int) = if (present(a) && present(b))
+              java.lang.Long.compare(values(a), values(b))
+            else
+              java.lang.Boolean.compare(present(a), present(b))
+          }
+        }
+      })
+      case _ ⇒
+        None // fall back to compare
+    }
   /** Convert the serialized argument to Argument trait */
   def stringToArgument(argument: String): Option[XComparator.Argument] = None
 }
@@ -69,6 +69,14 @@ class ByPropertyText extends XComparator[XComparator.Argument] with XLoggable {
     val text2 = e2.eGet(propertyId, ptype.typeSymbol).map(value ⇒ ptype.valueToString(value.get.asInstanceOf[T])).getOrElse("").trim
     text1.compareTo(text2)
   }
+  /** Returns the sort key of element's properties */
+  override def key[T <: AnyRef with java.io.Serializable](propertyId: Symbol, ptype: PropertyType[T], argument: Option[XComparator.Argument]): Option[XComparator.Key] =
+    Some(new XComparator.Key {
+      def extract(elements: Array[Element]) = {
+        val texts = elements.map(_.eGet(propertyId, ptype.typeSymbol).map(value ⇒ ptype.valueToString(value.get.asInstanceOf[T])).getOrElse("").trim)
+        new XComparator.Keys { def compare(a: Int, b: Int) = texts(a).compareTo(texts(b)) }
+      }
+    })
   /** Convert the serialized argument to Argument trait */
   def stringToArgument(argument: String): Option[XComparator.Argument] = None
 }
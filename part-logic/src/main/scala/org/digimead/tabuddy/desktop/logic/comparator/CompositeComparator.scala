@@ -0,0 +1,158 @@
+/**
+ * This file is part of the TA Buddy project.
+ * Copyright (c) 2015 Alexey Aksenov ezh@ezh.msk.ru
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Global License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED
+ * BY Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS»,
+ * Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS» DISCLAIMS
+ * THE WARRANTY OF NON INFRINGEMENT OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Global License for more details.
+ * You should have received a copy of the GNU Affero General Global License
+ * along with this program; if not, see http://www.gnu.org/licenses or write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA, 02110-1301 USA, or download the license from the following URL:
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Global License.
+ *
+ * In accordance with Section 7(b) of the GNU Affero General Global License,
+ * you must retain the producer line in every report, form or document
+ * that is created or manipulated using TA Buddy.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the TA Buddy software without
+ * disclosing the source code of your own applications.
+ * These activities include: offering paid services to customers,
+ * serving files in a web or/and network application,
+ * shipping TA Buddy with a closed source product.
+ *
+ * For more information, please contact Digimead Team at this
+ * address: ezh@ezh.msk.ru
+ */
+
+package org.digimead.tabuddy.desktop.logic.comparator
+
+import org.digimead.digi.lib.log.api.XLoggable
+import org.digimead.tabuddy.desktop.logic.comparator.api.XComparator
+import org.digimead.tabuddy.desktop.logic.payload.PropertyType
+import org.digimead.tabuddy.desktop.logic.payload.view.api.XSorting
+import org.digimead.tabuddy.model.element.Element
+
+/**
+ * Composite comparator that applies all sorting definitions in a single pass.
+ * Sort keys of every element are extracted once before sorting,
+ * comparators without XComparator.key fall back to the per-compare comparison.
+ */
+class CompositeComparator(val rules: Seq[CompositeComparator.Rule]) {
+  /** Returns sorted sequence. */
+  def sort[T](items: IndexedSeq[T], parallel: Boolean)(element: T ⇒ Element): IndexedSeq[T] = if (rules.isEmpty || items.size < 2) items else {
+    val elements = items.map(element).toArray
+    val keys = rules.map(rule ⇒ (rule.key.extract(elements), rule.definition.direction)).toArray
+    val comparator = new CompositeComparator.IndexComparator(keys)
+    val index = Array.range(0, elements.length)
+    val forks = if (parallel && index.length >= CompositeComparator.parallelThreshold)
+      32 - Integer.numberOfLeadingZeros(Runtime.getRuntime().availableProcessors() - 1)
+    else
+      0
+    comparator.sort(index, new Array[Int](index.length), 0, index.length, forks)
+    index.map(items)
+  }
+
+  override def toString = "CompositeComparator" + rules.map(_.definition).mkString("[", ", ", "]")
+}
+
+object CompositeComparator extends XLoggable {
+  /** Minimum number of items that are sorted in parallel. */
+  val parallelThreshold = 10000
+  /** Maximum length of range that is sorted with insertion sort. */
+  val insertionThreshold = 16
+
+  /** Compile sorting to the composite comparator. */
+  def apply(sorting: XSorting): CompositeComparator = new CompositeComparator(sorting.definitions.toSeq.flatMap(rule))
+  /** Compile sorting definition to the rule. */
+  def rule(definition: XSorting.Definition): Option[Rule] = {
+    val comparator = AvailableComparators.map.get(definition.comparator)
+    if (comparator.isEmpty)
+      log.error(s"Comparator for id ${definition.comparator} is not found")
+    val propertyType = PropertyType.container.get(definition.propertyType)
+    if (propertyType.isEmpty)
+      log.error(s"PropertyType for id ${definition.propertyType} is not found")
+    for {
+      comparator ← comparator.map(_.**)
+      propertyType ← propertyType
+    } yield {
+      val ptype = propertyType.asInstanceOf[comparator.ComparatorPropertyType[AnyRef with java.io.Serializable]]
+      val argument = comparator.stringToArgument(definition.argument)
+      new Rule(definition, comparator.key(definition.property, ptype, argument) getOrElse new XComparator.Key {
+        def extract(elements: Array[Element]) = new XComparator.Keys {
+          def compare(a: Int, b: Int) = comparator.compare(definition.property, ptype, elements(a), elements(b), argument)
+        }
+      })
+    }
+  }
+
+  /** Compiled sorting definition. */
+  class Rule(val definition: XSorting.Definition, val key: XComparator.Key)
+  /** Stable merge sort of element indexes by keys. */
+  class IndexComparator(keys: Array[(XComparator.Keys, Boolean)]) {
+    /** Compare elements with indexes a and b. */
+    def compare(a: Int, b: Int): Int = {
+      var i = 0
+      while (i < keys.length) {
+        val (key, ascending) = keys(i)
+        val result = key.compare(a, b)
+        if (result != 0)
+          return if (ascending) result else -result
+        i += 1
+      }
+      0
+    }
+    /** Sort range [from, until) of the index with buffer as scratch space. */
+    def sort(index: Array[Int], buffer: Array[Int], from: Int, until: Int, forks: Int): Unit = if (until - from <= insertionThreshold) {
+      for (i ← from + 1 until until) {
+        val value = index(i)
+        var j = i - 1
+        while (j >= from && compare(index(j), value) > 0) {
+          index(j + 1) = index(j)
+          j -= 1
+        }
+        index(j + 1) = value
+      }
+    } else {
+      val middle = (from + until) >>> 1
+      if (forks > 0)
+        Seq((from, middle), (middle, until)).par.foreach { case (from, until) ⇒ sort(index, buffer, from, until, forks - 1) }
+      else {
+        sort(index, buffer, from, middle, 0)
+        sort(index, buffer, middle, until, 0)
+      }
+      if (compare(index(middle - 1), index(middle)) > 0) {
+        System.arraycopy(index, from, buffer, from, until - from)
+        var left = from
+        var right = middle
+        var i = from
+        while (i < until) {
+          if (right >= until || (left < middle && compare(buffer(left), buffer(right)) <= 0)) {
+            index(i) = buffer(left)
+            left += 1
+          } else {
+            index(i) = buffer(right)
+            right += 1
+          }
+          i += 1
+        }
+      }
+    }
+  }
+}
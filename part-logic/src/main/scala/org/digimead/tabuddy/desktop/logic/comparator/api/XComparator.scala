@@ -76,6 +76,8 @@ trait XComparator[T <: XComparator.Argument] {
     compare(property.id, property.ptype.asInstanceOf[ComparatorPropertyType[U]], e1, e2, argument)
   /** Compare two element's properties */
   def compare[U <: AnyRef with java.io.Serializable](propertyId: Symbol, ptype: ComparatorPropertyType[U], e1: Element, e2: Element, argument: Option[T]): Int
+  /** Returns the sort key of element's properties if the comparator is able to compare extracted keys */
+  def key[U <: AnyRef with java.io.Serializable](propertyId: Symbol, ptype: ComparatorPropertyType[U], argument: Option[T]): Option[XComparator.Key] = None
   /** Convert the serialized argument to Argument instance */
   def stringToArgument(argument: String): Option[T]
   /** Convert the serialized argument to the text representation for the user */
@@ -85,4 +87,14 @@ trait XComparator[T <: XComparator.Argument] {
 object XComparator {
   /** Contains comparator options */
   trait Argument
+  /** Sort key that is extracted once per element */
+  trait Key {
+    /** Extract keys of elements */
+    def extract(elements: Array[Element]): Keys
+  }
+  /** Keys of elements that are extracted by Key */
+  trait Keys {
+    /** Compare keys of elements with indexes a and b */
+    def compare(a: Int, b: Int): Int
+  }
 }
@@ -73,6 +73,32 @@ class ByPropertyText extends XFilter[ByPropertyTextArgument] with XLoggable {
         log.warn("argument is absent")
         true
     }
+  /** Returns the reusable predicate for element property */
+  override def predicate[A <: AnyRef with java.io.Serializable](propertyId: Symbol, ptype: PropertyType[A], argument: Option[ByPropertyTextArgument]): XFilter.Predicate =
+    argument match {
+      case Some(argument) ⇒
+        val pattern = argument.value.toLowerCase()
+        val length = pattern.length()
+        val typeSymbol = ptype.typeSymbol
+        new XFilter.Predicate {
+          def apply(e: Element) = e.eGet(propertyId, typeSymbol) match {
+            case Some(value) ⇒
+              val text = ptype.valueToString(value.get.asInstanceOf[A])
+              var i = 0
+              var found = length == 0
+              while (!found && i <= text.length() - length) {
+                found = text.regionMatches(true, i, pattern, 0, length)
+                i += 1
+              }
+              found
+            case None ⇒
+              length == 0
+          }
+        }
+      case None ⇒
+        log.warn("argument is absent")
+        new XFilter.Predicate { def apply(e: Element) = true }
+    }
   /** Convert the serialized argument to Argument trait */
   def stringToArgument(argument: String): Option[ByPropertyTextArgument] = Some(ByPropertyTextArgument(argument.trim()))
 }
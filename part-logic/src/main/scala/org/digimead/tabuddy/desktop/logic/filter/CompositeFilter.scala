@@ -0,0 +1,98 @@
+/**
+ * This file is part of the TA Buddy project.
+ * Copyright (c) 2015 Alexey Aksenov ezh@ezh.msk.ru
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Global License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED
+ * BY Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS»,
+ * Limited Liability Company «MEZHGALAKTICHESKIJ TORGOVYJ ALIANS» DISCLAIMS
+ * THE WARRANTY OF NON INFRINGEMENT OF THIRD PARTY RIGHTS.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Global License for more details.
+ * You should have received a copy of the GNU Affero General Global License
+ * along with this program; if not, see http://www.gnu.org/licenses or write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA, 02110-1301 USA, or download the license from the following URL:
+ * http://www.gnu.org/licenses/agpl.html
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Global License.
+ *
+ * In accordance with Section 7(b) of the GNU Affero General Global License,
+ * you must retain the producer line in every report, form or document
+ * that is created or manipulated using TA Buddy.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the TA Buddy software without
+ * disclosing the source code of your own applications.
+ * These activities include: offering paid services to customers,
+ * serving files in a web or/and network application,
+ * shipping TA Buddy with a closed source product.
+ *
+ * For more information, please contact Digimead Team at this
+ * address: ezh@ezh.msk.ru
+ */
+
+package org.digimead.tabuddy.desktop.logic.filter
+
+import org.digimead.digi.lib.log.api.XLoggable
+import org.digimead.tabuddy.desktop.logic.AnySRef
+import org.digimead.tabuddy.desktop.logic.filter.api.XFilter
+import org.digimead.tabuddy.desktop.logic.payload.PropertyType
+import org.digimead.tabuddy.desktop.logic.payload.view.api.{ XFilter ⇒ XViewFilter }
+import org.digimead.tabuddy.model.element.Element
+
+/**
+ * Composite filter that checks all rules of the user defined filter.
+ * Rules are compiled once to predicates with resolved property type and argument.
+ */
+class CompositeFilter(val rules: Array[CompositeFilter.Rule]) extends XFilter.Predicate {
+  /** Check whether element passes all rules. */
+  def apply(e: Element): Boolean = {
+    var i = 0
+    while (i < rules.length) {
+      if (!rules(i)(e))
+        return false
+      i += 1
+    }
+    true
+  }
+
+  override def toString = "CompositeFilter" + rules.map(_.rule).mkString("[", ", ", "]")
+}
+
+object CompositeFilter extends XLoggable {
+  /** Compile user defined filter to the composite filter. */
+  def apply(filter: XViewFilter): CompositeFilter = new CompositeFilter(filter.rules.toArray.flatMap(rule(_)))
+  /** Compile user defined filter rule. */
+  def rule(rule: XViewFilter.Rule): Option[Rule] = {
+    val filter = AvailableFilters.map.get(rule.filter)
+    if (filter.isEmpty)
+      log.error(s"Filter for id ${rule.filter} is not found")
+    val propertyType = PropertyType.container.get(rule.propertyType)
+    if (propertyType.isEmpty)
+      log.error(s"PropertyType for id ${rule.propertyType} is not found")
+    for {
+      filter ← filter.map(_.**)
+      propertyType ← propertyType
+    } yield new Rule(rule, filter.predicate(rule.property,
+      propertyType.asInstanceOf[filter.FilterPropertyType[AnySRef]], filter.stringToArgument(rule.argument)))
+  }
+
+  /** Compiled filter rule with folded NOT flag. */
+  class Rule(val rule: XViewFilter.Rule, predicate: XFilter.Predicate) extends XFilter.Predicate {
+    /** Inverter flag. */
+    protected val not = rule.not
+
+    /** Check whether element passes the rule. */
+    def apply(e: Element): Boolean = predicate(e) != not
+  }
+}
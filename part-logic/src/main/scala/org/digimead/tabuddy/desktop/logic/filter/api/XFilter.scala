@@ -77,6 +77,9 @@ trait XFilter[T <: XFilter.Argument] {
     filter(property.id, property.ptype.asInstanceOf[FilterPropertyType[U]], e, argument)
   /** Filter element property */
   def filter[U <: AnySRef](propertyId: Symbol, ptype: FilterPropertyType[U], e: Element, argument: Option[T]): Boolean
+  /** Returns the reusable predicate for element property */
+  def predicate[U <: AnySRef](propertyId: Symbol, ptype: FilterPropertyType[U], argument: Option[T]): XFilter.Predicate =
+    new XFilter.Predicate { def apply(e: Element) = filter(propertyId, ptype, e, argument) }
   /** Convert the serialized argument to Argument instance */
   def stringToArgument(argument: String): Option[T]
   /** Convert the serialized argument to the text representation for the user */
@@ -86,4 +89,9 @@ trait XFilter[T <: XFilter.Argument] {
 object XFilter {
   /** Contains comparator options */
   trait Argument
+  /** Filter that is prepared for the specific property and argument */
+  trait Predicate {
+    /** Check whether element passes the filter */
+    def apply(e: Element): Boolean
+  }
 }
@@ -90,13 +90,18 @@ class OperationGraphSaveAs extends XOperationGraphSaveAs with XLoggable {
           data(GraphMarker) = newMarker
         }
       })
-      state.payloadObject = Option(marker.safeRead(_.payload))
+      val payload = marker.safeRead(_.payload)
+      state.safePayloadWrite(_.payloadObject = Option(payload))
     })
-    newMarker.graphAdditionalStorages = marker.graphAdditionalStorages
-    newMarker.digest = marker.digest
-    newMarker.containerEncryption = marker.containerEncryption
-    newMarker.contentEncryption = marker.contentEncryption
-    newMarker.signature = marker.signature
+    val (additionalStorages, digest, containerEncryption, contentEncryption, signature) =
+      (marker.graphAdditionalStorages, marker.digest, marker.containerEncryption, marker.contentEncryption, marker.signature)
+    newMarker.batch {
+      newMarker.graphAdditionalStorages = additionalStorages
+      newMarker.digest = digest
+      newMarker.containerEncryption = containerEncryption
+      newMarker.contentEncryption = contentEncryption
+      newMarker.signature = signature
+    }
     if (!newMarker.markerIsValid)
       throw new IllegalStateException(marker + " is not valid.")
     val newGraph = newMarker.safeRead(_.graph)
@@ -118,12 +118,15 @@ class ElementTemplate(
       }
     }
 
-  protected def getProperties(): ElementTemplate.PropertyMap =
+  protected def getProperties(): ElementTemplate.PropertyMap = {
+    val marker = GraphMarker(element.eGraph)
+    // Enumerations snapshot for all properties within a single event loop round trip.
+    lazy val enumerations = marker.safeRead { state ⇒ App.execNGet { state.payload.enumerations.toMap } }
     immutable.HashMap(getPropertyArray().map {
       case (id, ptypeID, typeSymbol) ⇒
         PropertyType.container.get(ptypeID) match {
           case Some(ptype) if ptype.typeSymbol == typeSymbol ⇒
-            Some(getProperty(GraphMarker(element.eGraph), id, ptype)(Manifest.classType(ptype.typeClass))).
+            Some(getProperty(marker, id, ptype, id ⇒ enumerations.get(id))(Manifest.classType(ptype.typeClass))).
               // as common TemplateProperty
               asInstanceOf[Option[(TemplatePropertyGroup, TemplateProperty[_ <: AnyRef with java.io.Serializable])]]
           case None ⇒
@@ -135,9 +138,10 @@ class ElementTemplate(
       groupBy(_._1).map(t ⇒ (t._1,
         // transform the value from Seq((group,property), ...) to Seq(property) sorted by id
         t._2.map(_._2).sortBy(_.id.name))).toSeq: _*)
+  }
   /** Get property map */
   protected def getProperty[T <: AnyRef with java.io.Serializable: Manifest](marker: GraphMarker, id: Symbol,
-    ptype: PropertyType[T]): (TemplatePropertyGroup, TemplateProperty[T]) = marker.safeRead { state ⇒
+    ptype: PropertyType[T], enumerations: Symbol ⇒ Option[Enumeration[_ <: AnyRef with java.io.Serializable]]): (TemplatePropertyGroup, TemplateProperty[T]) = marker.safeRead { state ⇒
     // get the default field
     val defaultField = element.eGet[T](getFieldIDPropertyDefault(id))
     // get enumeration field
@@ -150,12 +154,10 @@ class ElementTemplate(
     val requiredVal = requiredField.map(_.get).getOrElse(Boolean.box(false))
     val elementPropertyEnumeration = enumerationField.flatMap { idRaw ⇒
       val id = Symbol(idRaw)
-      App.execNGet {
-        val enumeration = state.payload.enumerations.get(id).find(_.ptype == ptype).asInstanceOf[Option[Enumeration[T]]]
-        if (enumeration.isEmpty)
-          log.error(s"Unable to load an unknown enumeration $idRaw")
-        enumeration
-      }
+      val enumeration = enumerations(id).find(_.ptype == ptype).asInstanceOf[Option[Enumeration[T]]]
+      if (enumeration.isEmpty)
+        log.error(s"Unable to load an unknown enumeration $idRaw")
+      enumeration
     }
     val elementPropertyGroup = TemplatePropertyGroup.default
     val elementProperty = new TemplateProperty[T](id, requiredVal, elementPropertyEnumeration.map(_.id), ptype, defaultField.map(_.get))
@@ -320,12 +322,15 @@ object ElementTemplate extends XLoggable {
   /** Update only modified element templates. */
   def save(marker: GraphMarker, templates: Set[ElementTemplate]) = marker.safeRead { state ⇒
     log.debug("Save element template list for graph " + state.graph)
-    val oldTemplates = App.execNGet { state.payload.elementTemplates.values.toSet }
-    val deleted = oldTemplates.filterNot(oldTemplate ⇒ templates.exists(compareDeep(_, oldTemplate)))
-    val added = templates.filterNot(newTemplate ⇒ oldTemplates.exists(compareDeep(_, newTemplate)))
+    val (deleted, added) = App.execNGet {
+      val oldTemplates = state.payload.elementTemplates.values.toSet
+      val deleted = oldTemplates.filterNot(oldTemplate ⇒ templates.exists(compareDeep(_, oldTemplate)))
+      val added = templates.filterNot(newTemplate ⇒ oldTemplates.exists(compareDeep(_, newTemplate)))
+      deleted.foreach { template ⇒ state.payload.elementTemplates.remove(template.id) }
+      (deleted, added)
+    }
     if (deleted.nonEmpty) {
       log.debug("Delete Set(%s)".format(deleted.mkString(", ")))
-      App.execNGet { deleted.foreach { template ⇒ state.payload.elementTemplates.remove(template.id) } }
       deleted.foreach(template ⇒ template.element.eNode.parent.foreach(_.safeWrite { _ -= template.element.eNode }))
     }
     if (added.nonEmpty) {
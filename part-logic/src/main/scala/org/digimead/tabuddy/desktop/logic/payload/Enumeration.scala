@@ -252,12 +252,15 @@ object Enumeration extends XLoggable {
   /** Update only modified enumerations. */
   def save(marker: GraphMarker, enumerations: Set[Enumeration[_ <: AnySRef]]) = marker.safeRead { state ⇒
     log.debug("Save enumeration list for graph " + state.graph)
-    val oldEnums = App.execNGet { state.payload.enumerations.values.toSet }
-    val deleted = oldEnums.filterNot(oldEnum ⇒ enumerations.exists(compareDeep(oldEnum, _)))
-    val added = enumerations.filterNot(newEnum ⇒ oldEnums.exists(compareDeep(newEnum, _)))
+    val (deleted, added) = App.execNGet {
+      val oldEnums = state.payload.enumerations.values.toSet
+      val deleted = oldEnums.filterNot(oldEnum ⇒ enumerations.exists(compareDeep(oldEnum, _)))
+      val added = enumerations.filterNot(newEnum ⇒ oldEnums.exists(compareDeep(newEnum, _)))
+      deleted.foreach { enumeration ⇒ state.payload.enumerations.remove(enumeration.id) }
+      (deleted, added)
+    }
     if (deleted.nonEmpty) {
       log.debug("delete Set(%s)".format(deleted.mkString(", ")))
-      App.execNGet { deleted.foreach { enumeration ⇒ state.payload.enumerations.remove(enumeration.id) } }
       deleted.foreach(enumeration ⇒ enumeration.element.eNode.parent.foreach(_.safeWrite { _ -= enumeration.element.eNode }))
     }
     if (added.nonEmpty) {
@@ -162,16 +162,19 @@ object TypeSchema extends XLoggable {
   @log
   def save(marker: GraphMarker, schemas: Set[TypeSchema]) = marker.safeRead { state ⇒
     log.debug("Save type schema list for graph " + state.graph)
-    val oldSchemas = App.execNGet { state.payload.typeSchemas.values.toSet }
-    val deleted = oldSchemas.filterNot(oldSchema ⇒ schemas.exists(compareDeep(_, oldSchema)))
-    val added = schemas.filterNot(newSchema ⇒ oldSchemas.exists(compareDeep(_, newSchema)))
+    val (deleted, added) = App.execNGet {
+      val oldSchemas = state.payload.typeSchemas.values.toSet
+      val deleted = oldSchemas.filterNot(oldSchema ⇒ schemas.exists(compareDeep(_, oldSchema)))
+      val added = schemas.filterNot(newSchema ⇒ oldSchemas.exists(compareDeep(_, newSchema)))
+      deleted.foreach { schema ⇒ state.payload.typeSchemas.remove(schema.id) }
+      added.foreach { schema ⇒ state.payload.typeSchemas(schema.id) = schema }
+      (deleted, added)
+    }
     if (deleted.nonEmpty) {
       log.debug("Delete Set(%s)".format(deleted.mkString(", ")))
-      App.execNGet { deleted.foreach { schema ⇒ state.payload.typeSchemas.remove(schema.id) } }
     }
     if (added.nonEmpty) {
       log.debug("Add Set(%s)".format(added.mkString(", ")))
-      App.execNGet { added.foreach { schema ⇒ state.payload.typeSchemas(schema.id) = schema } }
     }
   }
   /** TypeSchema unapply. */
@@ -44,10 +44,14 @@
 package org.digimead.tabuddy.desktop.logic.payload.marker
 
 import com.google.common.collect.MapMaker
+import com.google.common.io.BaseEncoding
 import java.io.{ ByteArrayInputStream, ByteArrayOutputStream, File, IOException }
 import java.net.URI
+import java.nio.file.{ Files, Paths, StandardCopyOption }
+import java.security.MessageDigest
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.locks.ReentrantReadWriteLock
+import java.util.concurrent.atomic.{ AtomicLong, AtomicReference }
+import java.util.concurrent.locks.{ Lock, ReentrantReadWriteLock }
 import java.util.{ Properties, UUID }
 import org.digimead.digi.lib.aop.log
 import org.digimead.digi.lib.log.api.XLoggable
@@ -60,10 +64,12 @@ import org.digimead.tabuddy.desktop.logic.operation.graph.OperationGraphClose
 import org.digimead.tabuddy.desktop.logic.payload.DSL._
 import org.digimead.tabuddy.desktop.logic.payload.marker.api.XGraphMarker
 import org.digimead.tabuddy.desktop.logic.payload.marker.serialization.SerializationSpecific
+import org.digimead.tabuddy.desktop.logic.payload.marker.serialization.encryption.api.XEncryption
 import org.digimead.tabuddy.desktop.logic.payload.view.{ Filter, Sorting, View }
 import org.digimead.tabuddy.desktop.logic.payload.{ Enumeration, Payload, PredefinedElements, TypeSchema }
 import org.digimead.tabuddy.model.element.Element
 import org.digimead.tabuddy.model.graph.Graph
+import org.digimead.tabuddy.model.serialization.transport.Transport
 import org.digimead.tabuddy.model.serialization.{ SData, Serialization }
 import org.digimead.tabuddy.model.{ Model, Record }
 import org.eclipse.core.internal.utils.Policy
@@ -102,10 +108,9 @@ class GraphMarker(
   val state: GraphMarker.ThreadSafeState = initializeState()
 
   /** Assert marker state. */
-  def assertState() = safeRead { state ⇒
-    if (state.asInstanceOf[GraphMarker.ThreadUnsafeState].payloadObject == null)
+  def assertState() =
+    if (state.unsafe.payloadObject == null)
       throw new IllegalStateException(s"${this} points to disposed data.")
-  }
 
   /** Load type schemas from local storage. */
   @log
@@ -114,7 +119,6 @@ class GraphMarker(
     val containerEncryptionMap = containerEncryption.encryption
     val contentEncryptionMap = contentEncryption.encryption
     val storageURI = storage getOrElse graphPath.toURI()
-    var schemas = immutable.HashSet[TypeSchema]()
     Serialization.perScheme.get(storageURI.getScheme()) match {
       case Some(transport) ⇒
         val sData = SData(SData.Key.storageURI -> storageURI)
@@ -141,24 +145,40 @@ class GraphMarker(
           case e: Throwable ⇒
             log.error(s"Unable to load type schema index ${schemaIndexURI}: " + e.getMessage(), e); Array.empty[UUID]
         }
-        for (schemaId ← ids) try {
-          val schemaURI = transport.append(typeSchemasStorageBase, encode(schemaId.toString() + ".yaml"))
-          val yaml = new String(decrypt(transport.read(schemaURI, sData)), io.Codec.UTF8.charSet)
-          TypeSchema.YAML.from(yaml).foreach(schema ⇒ schemas = schemas + schema)
-        } catch {
-          case e: IOException ⇒
-            log.error(s"Unable to load type schema ${schemaId.toString}.yaml:" + e.getMessage(), e)
-        }
+        // Read, decrypt and parse every schema in parallel.
+        val loaded = ids.par.map { schemaId ⇒
+          try {
+            val schemaURI = transport.append(typeSchemasStorageBase, encode(schemaId.toString() + ".yaml"))
+            val yaml = new String(decrypt(transport.read(schemaURI, sData)), io.Codec.UTF8.charSet)
+            TypeSchema.YAML.from(yaml).map(schema ⇒ (schema, typeSchemaDigest(yaml)))
+          } catch {
+            case e: IOException ⇒
+              log.error(s"Unable to load type schema ${schemaId.toString}.yaml:" + e.getMessage(), e)
+              None
+          }
+        }.seq
+        if (loaded.forall(_.nonEmpty))
+          // Storage content is known, so the next save may be incremental.
+          state.unsafe.typeSchemaDigests(storageURI) =
+            GraphMarker.TypeSchemaDigests((containerEncryptionMap.get(storageURI), contentEncryptionMap.get(storageURI)),
+              immutable.HashMap(loaded.flatten.map { case (schema, digest) ⇒ (schema.id, digest) }: _*))
+        else
+          state.unsafe.typeSchemaDigests.remove(storageURI)
+        immutable.HashSet(loaded.flatten.map(_._1): _*)
       case None ⇒
         throw new IllegalArgumentException(s"Unable to load type schemas from URI with unknown scheme ${storageURI.getScheme}.")
     }
-    schemas
   }
   /**
    * Lock marker state for reading.
    */
   @inline
   def safeRead[A](f: GraphMarker.ThreadUnsafeStateReadOnly ⇒ A): A = state.safeRead(f)
+  /**
+   * Read marker payload without the state lock.
+   */
+  @inline
+  def safePayloadRead[A](f: Payload ⇒ A): A = state.safePayloadRead(f)
   /**
    * Lock marker state for updating.
    */
@@ -187,34 +207,84 @@ class GraphMarker(
         }
     }
 
+    // Serialize schemas once for all storages.
+    val content = immutable.HashMap(schemas.toSeq.par.map { schema ⇒
+      val yaml = TypeSchema.YAML.to(schema)
+      (schema.id, (yaml.getBytes(io.Codec.UTF8.charSet), typeSchemaDigest(yaml)))
+    }.seq: _*)
+    val digests = content.map { case (id, (_, digest)) ⇒ (id, digest) }
+    val containerEncryptionMap = containerEncryption.encryption
+    val contentEncryptionMap = contentEncryption.encryption
+
     // Freeze schemas.
     for (storageURI ← typeSchemasStorages) Serialization.perScheme.get(storageURI.getScheme()) match {
       case Some(transport) ⇒
         val sDataForStorageURI = sData.updated(SData.Key.storageURI, storageURI)
         val typeSchemasStorageBase = transport.append(storageURI, folderTypeSchemas)
-        val typeSchemasStorageBaseEncoded = Serialization.inner.encode(typeSchemasStorageBase, sDataForStorageURI)
-        log.debug(s"Save type schemas to $typeSchemasStorageBase")
-        // Clear folder.
-        transport.delete(typeSchemasStorageBase, sDataForStorageURI)
-        // Freeze.
         val schemaIndexURI = Serialization.inner.encode(transport.append(typeSchemasStorageBase, index), sDataForStorageURI)
-        transport.write(schemaIndexURI, schemas.map(_.id.toString).mkString("\n").getBytes(io.Codec.UTF8.charSet), sDataForStorageURI)
-        schemas.foreach { schema ⇒
-          val schemaURI = Serialization.inner.encode(transport.append(typeSchemasStorageBase, schema.id.toString() + ".yaml"), sDataForStorageURI)
-          transport.write(schemaURI, TypeSchema.YAML.to(schema).getBytes(io.Codec.UTF8.charSet), sDataForStorageURI)
+        def schemaURI(id: UUID) = Serialization.inner.encode(transport.append(typeSchemasStorageBase, id.toString() + ".yaml"), sDataForStorageURI)
+        val encryption = (containerEncryptionMap.get(storageURI), contentEncryptionMap.get(storageURI))
+        try state.typeSchemaDigests.get(storageURI) match {
+          case Some(known) if known.encryption == encryption ⇒
+            // Update only modified schemas. The index is replaced after the new schemas and before removal of the old ones.
+            val modified = content.filter { case (id, (_, digest)) ⇒ known.digests.get(id) != Some(digest) }
+            val removed = known.digests.keySet -- content.keySet
+            log.debug(s"Save type schemas to $typeSchemasStorageBase: ${modified.size} modified, ${removed.size} removed")
+            modified.foreach { case (id, (bytes, _)) ⇒ typeSchemasWrite(transport, schemaURI(id), bytes, sDataForStorageURI) }
+            if (known.digests.keySet != content.keySet)
+              typeSchemasWrite(transport, schemaIndexURI, content.keys.mkString("\n").getBytes(io.Codec.UTF8.charSet), sDataForStorageURI)
+            removed.foreach(id ⇒ transport.delete(schemaURI(id), sDataForStorageURI))
+            state.typeSchemaDigests(storageURI) = GraphMarker.TypeSchemaDigests(encryption, digests)
+          case _ ⇒
+            log.debug(s"Save type schemas to $typeSchemasStorageBase")
+            // Clear folder.
+            transport.delete(typeSchemasStorageBase, sDataForStorageURI)
+            // Freeze.
+            transport.write(schemaIndexURI, content.keys.mkString("\n").getBytes(io.Codec.UTF8.charSet), sDataForStorageURI)
+            content.foreach { case (id, (bytes, _)) ⇒ transport.write(schemaURI(id), bytes, sDataForStorageURI) }
+            state.typeSchemaDigests(storageURI) = GraphMarker.TypeSchemaDigests(encryption, digests)
+        } catch {
+          case e: Throwable ⇒
+            // Storage content is unknown.
+            state.typeSchemaDigests.remove(storageURI)
+            throw e
         }
       case None ⇒
         throw new IllegalArgumentException(s"Unable to save type schemas to URI with unknown scheme ${storageURI.getScheme}.")
     }
   }
+  /** Get type schema YAML digest. */
+  protected def typeSchemaDigest(yaml: String): String =
+    BaseEncoding.base16().encode(MessageDigest.getInstance("SHA-1").digest(yaml.getBytes(io.Codec.UTF8.charSet)))
+  /** Write type schema content, replace the previous one atomically if the storage is local. */
+  protected def typeSchemasWrite(transport: Transport, uri: URI, content: Array[Byte], sData: SData) = uri.getScheme() match {
+    case "file" ⇒
+      val temporary = new URI(uri.toString() + ".tmp")
+      transport.write(temporary, content, sData)
+      Files.move(Paths.get(temporary), Paths.get(uri), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+    case _ ⇒
+      transport.write(uri, content, sData)
+  }
 
+  /**
+   * Update graph properties within f and save the marker once at the end.
+   * Batches may be nested, only the outermost one saves the marker.
+   */
+  def batch[A](f: ⇒ A): A = state.safePropertiesWrite { state ⇒
+    state.propertiesBatch += 1
+    try f finally {
+      state.propertiesBatch -= 1
+      if (state.propertiesBatch == 0 && state.propertiesDirty)
+        markerSave()
+    }
+  }
   /** Get values from graph properties with double checking. */
   protected def graphProperties[A](f: Properties ⇒ A): A =
-    safeRead { state: GraphMarker.ThreadUnsafeStateReadOnly ⇒
+    state.safePropertiesRead { state ⇒
       assertState()
       state.graphProperties.map(f)
     } getOrElse {
-      safeUpdate { state ⇒
+      state.safePropertiesWrite { state ⇒
         state.graphProperties.map(f) getOrElse {
           require(state, true)
           state.graphProperties.map(f) getOrElse { throw new IOException("Unable to read graph properties.") }
@@ -223,13 +293,17 @@ class GraphMarker(
     }
   /** Update values of graph properties. */
   protected def graphPropertiesUpdate[A](f: Properties ⇒ A): A =
-    safeUpdate { state: GraphMarker.ThreadUnsafeStateReadOnly ⇒
+    state.safePropertiesWrite { state ⇒
       assertState()
       val result = state.graphProperties.map(f) getOrElse {
         require(state, true)
         state.graphProperties.map(f) getOrElse { throw new IOException("Unable to read graph properties.") }
       }
-      markerSave()
+      state.serializationSettingsInvalidate()
+      if (state.propertiesBatch > 0)
+        state.propertiesDirty = true
+      else
+        markerSave()
       result
     }
   protected def initializePayload(): Payload = state.safeWrite { state ⇒
@@ -382,11 +456,8 @@ object GraphMarker extends XLoggable {
   /** Application wide context listener that unbind disposed contexts. */
   val contextsListener = Context.Event.subscribe(null.asInstanceOf[String], (key: String, context: Context) ⇒
     Option(context.getLocal(classOf[GraphMarker])).foreach { marker ⇒
-      globalRWL.readLock().lock()
-      try {
-        if (marker.state.asInstanceOf[ThreadUnsafeState].contextRefs.contains(context))
-          unbind(context, marker)
-      } finally globalRWL.readLock().unlock()
+      if (marker.state.unsafe.contextRefs.contains(context))
+        unbind(context, marker)
     })
   /**
    * Field that contains map of graph additional storages except local one.
@@ -429,8 +500,14 @@ object GraphMarker extends XLoggable {
    * like OperationGraphClose, OperationGraphDelete
    */
   val globalRWL = new ReentrantReadWriteLock
+  /** Number of marker lock acquisitions that had to wait for another thread. */
+  val lockContention = new AtomicLong()
+  /** Number of marker properties writes. */
+  val markerWrites = new AtomicLong()
   /** Application wide GraphMarker states. */
   protected val state = new ConcurrentHashMap[UUID, ThreadSafeState].asScala
+  /** Context -> binded marker. */
+  protected val contextBindings = new MapMaker().weakKeys().makeMap[Context, GraphMarker]()
 
   /** Get marker for UUID. */
   def apply(uuid: UUID): GraphMarker = state.get(uuid).flatMap(_.graphMarkerSingleton) getOrElse new GraphMarker(uuid)
@@ -438,20 +515,17 @@ object GraphMarker extends XLoggable {
   def apply(graph: Graph[_ <: Model.Like]): GraphMarker = graph.withData(_(GraphMarker).asInstanceOf[GraphMarker])
   /** Bind marker to context. */
   def bind(marker: GraphMarker, context: Context = Core.context) = {
-    globalRWL.readLock().lock()
-    try {
-      log.debug(s"Bind ${marker} to ${context}")
-      contextToMarker(context).foreach(_ ⇒ unbind(context))
-      marker.state.asInstanceOf[ThreadUnsafeState].contextRefs(context) = ()
-      context.set(classOf[GraphMarker], marker)
-    } finally globalRWL.readLock().unlock()
+    log.debug(s"Bind ${marker} to ${context}")
+    Option(contextBindings.put(context, marker)) match {
+      case Some(previous) if previous ne marker ⇒ release(context, previous)
+      case _ ⇒
+    }
+    marker.state.unsafe.contextRefs(context) = ()
+    context.set(classOf[GraphMarker], marker)
   }
   /** Get marker binded to context. */
-  def contextToMarker(context: Context): Option[GraphMarker] = {
-    globalRWL.readLock().lock()
-    try Option(context.getLocal(classOf[GraphMarker]))
-    finally globalRWL.readLock().unlock()
-  }
+  def contextToMarker(context: Context): Option[GraphMarker] =
+    Option(context.getLocal(classOf[GraphMarker]))
   /**
    * Create new graph marker in the workspace
    *
@@ -513,12 +587,13 @@ object GraphMarker extends XLoggable {
           marker.resource.delete(true, false, Policy.monitorFor(null))
           GraphMarker.state.remove(marker.uuid)
           state.graphObject = null
-          state.graphObject = null
-          state.payloadObject = null
+          state.safePayloadWrite(_.payloadObject = null)
           readOnlyMarker
       }
     } finally globalRWL.writeLock().unlock()
   }
+  /** Forget decrypted encryption keys of all markers. */
+  def serializationKeysWipe() = state.values.foreach(_.unsafe.serializationKeys.clear())
   /** Get a graph list. */
   def list(): Seq[UUID] = {
     globalRWL.readLock().lock()
@@ -536,11 +611,8 @@ object GraphMarker extends XLoggable {
     finally globalRWL.readLock().unlock()
   }
   /** Get list of contexts binded to marker. */
-  def markerToContext(marker: GraphMarker): Seq[Context] = {
-    globalRWL.readLock().lock()
-    try marker.state.asInstanceOf[ThreadUnsafeState].contextRefs.keys.toSeq
-    finally globalRWL.readLock().unlock()
-  }
+  def markerToContext(marker: GraphMarker): Seq[Context] =
+    marker.state.unsafe.contextRefs.keys.toSeq
   /** Get a shell which is suitable for the graph marker. */
   def shell(graph: Graph[_ <: Model.Like]): Option[(Context, Shell)] =
     shell(GraphMarker(graph))
@@ -625,40 +697,140 @@ object GraphMarker extends XLoggable {
   def temporary(graph: Graph[_ <: Model]): TemporaryGraphMarker = new TemporaryGraphMarker(graph)
   /** Unbind marker from context. */
   def unbind(context: Context, markerArg: GraphMarker = null) = {
-    globalRWL.readLock().lock()
-    try {
-      val marker = if (markerArg != null) markerArg else contextToMarker(context).get // throw if empty
-      log.debug(s"Unbind ${marker} from ${context}")
-      context.remove(classOf[GraphMarker])
-      marker.state.asInstanceOf[ThreadUnsafeState].contextRefs.remove(context)
-      if (marker.state.asInstanceOf[ThreadUnsafeState].contextRefs.isEmpty && marker.graphIsOpen())
-        marker.safeUpdate(e ⇒ OperationGraphClose(e.graph, false))
-    } finally globalRWL.readLock().unlock()
+    val marker = if (markerArg != null) {
+      contextBindings.remove(context, markerArg)
+      markerArg
+    } else
+      (Option(contextBindings.remove(context)) orElse contextToMarker(context)).get // throw if empty
+    log.debug(s"Unbind ${marker} from ${context}")
+    release(context, marker)
   }
 
+  /** Drop binding between context and marker, close graph without bindings. */
+  protected def release(context: Context, marker: GraphMarker) {
+    context.remove(classOf[GraphMarker])
+    marker.state.unsafe.contextRefs.remove(context)
+    if (marker.state.unsafe.contextRefs.isEmpty && marker.graphIsOpen())
+      marker.safeUpdate(e ⇒ OperationGraphClose(e.graph, false))
+  }
+
+  /**
+   * Immutable snapshot of the decoded serialization settings.
+   *
+   * @param version graph properties version
+   */
+  case class SerializationSettings(version: Long,
+    containerEncryption: Option[XGraphMarker.Encryption] = None,
+    contentEncryption: Option[XGraphMarker.Encryption] = None,
+    digest: Option[XGraphMarker.Digest] = None,
+    signature: Option[XGraphMarker.Signature] = None)
+  /**
+   * Type schemas that are known to be in the storage.
+   *
+   * @param encryption container and content encryption parameters of the storage
+   * @param digests type schema id -> YAML digest
+   */
+  case class TypeSchemaDigests(encryption: (Option[XEncryption.Parameters], Option[XEncryption.Parameters]),
+    digests: immutable.Map[UUID, String])
   /**
    * Graph marker thread safe object.
    */
   trait ThreadSafeState {
     this: ThreadUnsafeState ⇒
-    /** State read/write lock. */
+    /** State read/write lock. It guards the graph. */
     protected val rwl = new ReentrantReadWriteLock
+    /**
+     * Payload lock.
+     * The reference itself is volatile. The lock makes "read the payload and derive a value from it"
+     * atomic against replacing the payload: safePayloadRead never returns a value derived from
+     * a payload that was replaced or dropped while f was evaluated.
+     * Nothing else may be locked while it is held.
+     */
+    protected val payloadLock = new StateLock
+    /**
+     * Graph properties lock.
+     * It is independent from the state lock and must never be held while acquiring the state lock.
+     */
+    protected val propertiesLock = new StateLock
     /** Contains the specific singleton instance. */
     val graphMarkerSingleton: Option[GraphMarker]
 
+    /** Get thread unsafe state. The caller is responsible for locking. */
+    def unsafe: ThreadUnsafeState = this
     /** Lock this state for reading. */
     def safeRead[A](f: ThreadUnsafeStateReadOnly ⇒ A): A = {
-      rwl.readLock().lock()
+      StateLock.lock(rwl.readLock())
       try f(this) finally rwl.readLock().unlock()
     }
+    /**
+     * Read payload optimistically. The result is derived from the payload that was current during the whole evaluation.
+     * f may be evaluated twice and must be free of side effects.
+     */
+    def safePayloadRead[A](f: Payload ⇒ A): A = payloadLock.optimisticRead(f(payload))
+    /** Replace payload reference. All payload writers must go through this method. */
+    def safePayloadWrite[A](f: ThreadUnsafeState ⇒ A): A = payloadLock.write(f(this))
+    /**
+     * Read graph properties optimistically.
+     * f may be evaluated twice and must be free of side effects.
+     */
+    def safePropertiesRead[A](f: ThreadUnsafeStateReadOnly ⇒ A): A = propertiesLock.optimisticRead(f(this))
+    /** Lock graph properties for writing. */
+    def safePropertiesWrite[A](f: ThreadUnsafeState ⇒ A): A = propertiesLock.write(f(this))
     /** Lock this state for updating field content. */
     def safeUpdate[A](f: ThreadUnsafeStateReadOnly ⇒ A): A = safeWrite(f)
     /** Lock this state for writing. */
     def safeWrite[A](f: ThreadUnsafeState ⇒ A): A = {
-      rwl.writeLock().lock()
+      StateLock.lock(rwl.writeLock())
       try f(this) finally rwl.writeLock().unlock()
     }
   }
+  /**
+   * Read/write lock with optimistic reads.
+   * Optimistic reader runs without locking and validates the write sequence afterwards.
+   */
+  class StateLock {
+    /** Read/write lock. */
+    protected val rwl = new ReentrantReadWriteLock
+    /** Write sequence, odd while the write lock is held. */
+    @volatile protected var sequence = 0L
+
+    /** Run f without locking, rerun it under the read lock if there was a concurrent write. */
+    def optimisticRead[A](f: ⇒ A): A = {
+      val stamp = sequence
+      if ((stamp & 1) == 0) {
+        val result: Either[Throwable, A] = try Right(f) catch { case e: Throwable ⇒ Left(e) }
+        if (sequence == stamp)
+          return result match {
+            case Right(value) ⇒ value
+            case Left(e) ⇒ throw e
+          }
+      }
+      read(f)
+    }
+    /** Run f under the read lock. */
+    def read[A](f: ⇒ A): A = {
+      StateLock.lock(rwl.readLock())
+      try f finally rwl.readLock().unlock()
+    }
+    /** Run f under the write lock. */
+    def write[A](f: ⇒ A): A = {
+      StateLock.lock(rwl.writeLock())
+      // Only the outermost write changes the sequence.
+      val outermost = rwl.getWriteHoldCount() == 1
+      if (outermost) sequence += 1
+      try f finally {
+        if (outermost) sequence += 1
+        rwl.writeLock().unlock()
+      }
+    }
+  }
+  object StateLock {
+    /** Acquire lock, count the acquisition if it is contended. */
+    def lock(lock: Lock) = if (!lock.tryLock()) {
+      lockContention.incrementAndGet()
+      lock.lock()
+    }
+  }
   /**
    * Graph marker thread unsafe read only object.
    */
@@ -680,11 +852,24 @@ object GraphMarker extends XLoggable {
     /** Map of marker contexts binded with this graph. */
     val contextRefs = new MapMaker().weakKeys().makeMap[Context, Unit]().asScala
     /** Graph. */
-    private var graphObjectContainer = Option.empty[Graph[_ <: Model.Like]]
+    @volatile private var graphObjectContainer = Option.empty[Graph[_ <: Model.Like]]
     /** Graph properties. */
-    private var graphPropertiesContainer = Option.empty[Properties]
+    @volatile private var graphPropertiesContainer = Option.empty[Properties]
     /** Payload. */
-    private var payloadObjectContainer = Option.empty[Payload]
+    @volatile private var payloadObjectContainer = Option.empty[Payload]
+    /** Decoded serialization settings of the current graph properties. */
+    val serializationSettings = new AtomicReference(SerializationSettings(0))
+    /**
+     * Session cache of decrypted encryption keys (encrypted Base64 -> key).
+     * It is cleared with serialization settings, on graph close and on KeyRing stop.
+     */
+    val serializationKeys = new ConcurrentHashMap[String, String]().asScala
+    /** Depth of nested property batches, guarded by the properties lock. */
+    var propertiesBatch = 0
+    /** Flag indicating whether properties were modified within the batch, guarded by the properties lock. */
+    var propertiesDirty = false
+    /** Storage URI -> type schemas that were loaded from or saved to this storage. */
+    val typeSchemaDigests = new ConcurrentHashMap[URI, TypeSchemaDigests]().asScala
 
     /** Get graph. */
     def graph: Graph[_ <: Model.Like] = graphObject getOrElse { throw new IllegalStateException("Graph not loaded.") }
@@ -695,13 +880,22 @@ object GraphMarker extends XLoggable {
     /** Thread unsafe Graph properties getter. */
     def graphProperties: Option[Properties] = graphPropertiesContainer
     /** Thread unsafe Graph properties setter. */
-    def graphProperties_=(arg: Option[Properties]) = graphPropertiesContainer = arg
+    def graphProperties_=(arg: Option[Properties]) = {
+      graphPropertiesContainer = arg
+      serializationSettingsInvalidate()
+    }
     /** Thread unsafe get payload. */
     def payload: Payload = payloadObject getOrElse { throw new IllegalStateException("Payload not initialized.") }
     /** Thread unsafe Payload getter. */
     def payloadObject: Option[Payload] = payloadObjectContainer
     /** Thread unsafe Payload setter. */
     def payloadObject_=(arg: Option[Payload]) = payloadObjectContainer = arg
+    /** Drop decoded serialization settings. */
+    def serializationSettingsInvalidate() {
+      val settings = serializationSettings.get
+      serializationSettings.set(SerializationSettings(settings.version + 1))
+      serializationKeys.clear()
+    }
     override def toString() = s"GraphMarker.State($graphObject, $graphProperties, $payloadObject)"
   }
   /**
@@ -889,6 +1083,10 @@ object GraphMarker extends XLoggable {
       override def payloadObject_=(arg: Option[Payload]) = ???
       /** Lock this state for reading. */
       override def safeRead[A](f: ThreadUnsafeStateReadOnly ⇒ A): A = f(this)
+      /** Read graph properties. */
+      override def safePropertiesRead[A](f: ThreadUnsafeStateReadOnly ⇒ A): A = f(this)
+      /** Lock graph properties for writing. */
+      override def safePropertiesWrite[A](f: ThreadUnsafeState ⇒ A): A = f(this)
       /** Lock this state for updating field content. */
       override def safeUpdate[A](f: ThreadUnsafeStateReadOnly ⇒ A): A = safeWrite(f)
       /** Lock this state for writing. */
@@ -88,7 +88,8 @@ trait GraphSpecific {
       }
       graph.withData(_(GraphMarker) = GraphSpecific.this)
       state.graphObject = Option(graph)
-      state.payloadObject = Option(initializePayload())
+      val payload = initializePayload()
+      state.safePayloadWrite(_.payloadObject = Option(payload))
       // Update properties.
       // Update graphAdditionalStorages.
       val storages = graph.storages.toSet
@@ -214,7 +215,8 @@ trait GraphSpecific {
     state.contextRefs.clear()
     try markerSave() finally {
       state.graphObject = None
-      state.payloadObject = None
+      state.safePayloadWrite(_.payloadObject = None)
+      state.serializationKeys.clear()
     }
     App.publish(App.Message.Close(this, None))
   }
@@ -312,7 +314,7 @@ trait GraphSpecific {
   /** Check whether the graph is loaded. */
   def graphIsOpen(): Boolean = try safeRead { state ⇒
     assertState()
-    state.asInstanceOf[GraphMarker.ThreadUnsafeState].graphObject.nonEmpty
+    state.unsafe.graphObject.nonEmpty
   } catch {
     case e: IllegalStateException if e.getMessage.endsWith(" points to disposed data.") ⇒ false
   }
@@ -56,23 +56,21 @@ trait MarkerSpecific {
   this: GraphMarker ⇒
 
   /** The validation flag indicating whether the marker is consistent. */
-  def markerIsValid: Boolean = state.safeUpdate { state ⇒
-    try {
-      assertState()
-      resource.exists() && graphPath.exists() && {
-        if (autoload && state.graphProperties.isEmpty)
-          markerLoad()
-        true
-      }
-    } catch {
-      case e: Throwable ⇒
-        false
+  def markerIsValid: Boolean = try {
+    assertState()
+    resource.exists() && graphPath.exists() && {
+      if (autoload && state.safePropertiesRead(_.graphProperties.isEmpty))
+        state.safePropertiesWrite { state ⇒ if (state.graphProperties.isEmpty) markerLoad() }
+      true
     }
+  } catch {
+    case e: Throwable ⇒
+      false
   }
   /** Marker last access/last load timestamp. */
   def markerLastAccessed: Long = graphProperties { p ⇒ p.getProperty(GraphMarker.fieldLastAccessed).toLong }
   /** Load marker properties. */
-  def markerLoad() = state.safeWrite { state ⇒
+  def markerLoad() = state.safePropertiesWrite { state ⇒
     assertState()
     log.debug(s"Load marker with UUID ${uuid}.")
     if (!resource.exists())
@@ -84,13 +82,15 @@ trait MarkerSpecific {
     state.graphProperties = Option(graphProperties)
   }
   /** Save marker properties. */
-  def markerSave() = state.safeWrite { state ⇒
+  def markerSave() = state.safePropertiesWrite { state ⇒
     assertState()
     log.debug(s"Save marker ${this}.")
     require(state, true, false)
 
     // update fields
     state.graphProperties.get.setProperty(GraphMarker.fieldLastAccessed, System.currentTimeMillis().toString)
+    state.propertiesDirty = false
+    GraphMarker.markerWrites.incrementAndGet()
 
     // save model descriptor part
     graphPath.mkdirs()
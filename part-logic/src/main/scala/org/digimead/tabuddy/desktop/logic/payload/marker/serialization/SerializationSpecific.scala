@@ -56,6 +56,7 @@ import org.digimead.tabuddy.model.serialization.Serialization
 import org.digimead.tabuddy.model.serialization.digest.Digest
 import org.digimead.tabuddy.model.serialization.signature.Signature
 import scala.collection.JavaConverters.asScalaSetConverter
+import scala.collection.mutable
 
 /**
  * Part of the graph marker that contains serialization settings specific logic.
@@ -64,13 +65,17 @@ trait SerializationSpecific {
   this: GraphMarker ⇒
   /** Load container encryption settings from java.util.Properties. */
   def containerEncryption: XGraphMarker.Encryption =
-    encryptionLoad(GraphMarker.fieldContainerEncryption, "container")
+    serializationSettings(_.containerEncryption, (s, v) ⇒ s.copy(containerEncryption = Some(v))) {
+      encryptionLoad(GraphMarker.fieldContainerEncryption, "container")
+    }
   /** Store container encryption settings to java.util.Properties. */
   def containerEncryption_=(settings: XGraphMarker.Encryption) =
     encryptionStore(settings, GraphMarker.fieldContainerEncryption, "container")
   /** Load content encryption settings from java.util.Properties. */
   def contentEncryption: XGraphMarker.Encryption =
-    encryptionLoad(GraphMarker.fieldContentEncryption, "content")
+    serializationSettings(_.contentEncryption, (s, v) ⇒ s.copy(contentEncryption = Some(v))) {
+      encryptionLoad(GraphMarker.fieldContentEncryption, "content")
+    }
   /** Store content encryption settings to java.util.Properties. */
   def contentEncryption_=(settings: XGraphMarker.Encryption) =
     encryptionStore(settings, GraphMarker.fieldContentEncryption, "content")
@@ -86,54 +91,8 @@ trait SerializationSpecific {
       }) getOrElse Payload.defaultSerialization
   }
   /** Load digest settings from java.util.Properties. */
-  def digest: XGraphMarker.Digest = graphProperties { p ⇒
-    // acquire
-    val acquireSetting = p.getProperty(GraphMarker.fieldDigestAcquire) match {
-      case "required" ⇒ Some(true)
-      case "optional" ⇒ Some(false)
-      case _ ⇒ None
-    }
-    // freeze
-    val URIArgumentsLength = Option(p.getProperty(GraphMarker.fieldDigestFreeze)) match {
-      case Some(length) if length == "0" ⇒
-        return XGraphMarker.Digest(acquireSetting, Some(Map()))
-      case Some(length) ⇒
-        length.toInt
-      case None ⇒
-        return XGraphMarker.Digest(acquireSetting, None)
-    }
-    if (URIArgumentsLength < 0)
-      throw new IllegalStateException("Digest URI arguments length must be greater than zero.")
-    val URIArguments = for (i ← 0 until URIArgumentsLength)
-      yield p.getProperty(s"${GraphMarker.fieldDigestFreeze}_${i}") match {
-      case null ⇒ throw new IllegalStateException("There is 'null' value in digest URI argument.")
-      case location ⇒ (i, new URI(location))
-    }
-    val freezeSettings = for ((i, location) ← URIArguments) yield {
-      val argumentsLength = Option(p.getProperty(s"${GraphMarker.fieldDigestFreeze}_${i}_0")).map(_.toInt).getOrElse(0)
-      if (argumentsLength < 0)
-        throw new IllegalStateException(s"Digest arguments length for '${location}' must be greater than zero.")
-      val arguments = for (n ← (1 to argumentsLength).toList)
-        yield p.getProperty(s"${GraphMarker.fieldDigestFreeze}_${i}_${n}") match {
-        case null ⇒ throw new IllegalStateException("There is 'null' value in digest argument.")
-        case argument ⇒ argument
-      }
-      val parameters = arguments match {
-        case mechanismIdentifier :: xs ⇒
-          Digest.perIdentifier.find(_._1.name == mechanismIdentifier) match {
-            case Some((identifier, mechanism)) ⇒
-              val (algorithmName :: args) = xs
-              mechanism(algorithmName, args: _*)
-            case None ⇒
-              throw new IllegalStateException(s"Unable to find registered digest mechanism for ${mechanismIdentifier}.")
-          }
-        case Nil ⇒
-          Digest.NoDigest
-      }
-      location -> parameters
-    }
-    XGraphMarker.Digest(acquireSetting, Some(Map(freezeSettings: _*)))
-  }
+  def digest: XGraphMarker.Digest =
+    serializationSettings(_.digest, (s, v) ⇒ s.copy(digest = Some(v))) { digestLoad() }
   /** Store digest settings to java.util.Properties. */
   def digest_=(settings: XGraphMarker.Digest) = graphPropertiesUpdate { p ⇒
     // acquire
@@ -172,53 +131,8 @@ trait SerializationSpecific {
     }
   }
   /** Load signature settings from java.util.Properties. */
-  def signature: XGraphMarker.Signature = graphProperties { p ⇒
-    // acquire
-    val acquireSetting = p.getProperty(GraphMarker.fieldSignatureAcquire) match {
-      case null ⇒ None
-      case validatorId ⇒ Some(UUID.fromString(validatorId))
-    }
-    // freeze
-    val URIArgumentsLength = Option(p.getProperty(GraphMarker.fieldSignatureFreeze)) match {
-      case Some(length) if length == "0" ⇒
-        return XGraphMarker.Signature(acquireSetting, Some(Map()))
-      case Some(length) ⇒
-        length.toInt
-      case None ⇒
-        return XGraphMarker.Signature(acquireSetting, None)
-    }
-    if (URIArgumentsLength < 0)
-      throw new IllegalStateException("Signature URI arguments length must be greater than zero.")
-    val URIArguments = for (i ← 0 until URIArgumentsLength)
-      yield p.getProperty(s"${GraphMarker.fieldSignatureFreeze}_${i}") match {
-      case null ⇒ throw new IllegalStateException("There is 'null' value in signature URI argument.")
-      case location ⇒ (i, new URI(location))
-    }
-    val freezeSettings = for ((i, location) ← URIArguments) yield {
-      val argumentsLength = Option(p.getProperty(s"${GraphMarker.fieldSignatureFreeze}_${i}_0")).map(_.toInt).getOrElse(0)
-      if (argumentsLength < 0)
-        throw new IllegalStateException(s"Signature arguments length for '${location}' must be greater than zero.")
-      val arguments = for (n ← (1 to argumentsLength).toList)
-        yield p.getProperty(s"${GraphMarker.fieldSignatureFreeze}_${i}_${n}") match {
-        case null ⇒ throw new IllegalStateException("There is 'null' value in signature argument.")
-        case argument ⇒ argument
-      }
-      val parameters = arguments match {
-        case mechanismIdentifier :: xs ⇒
-          Signature.perIdentifier.find(_._1.name == mechanismIdentifier) match {
-            case Some((identifier, mechanism)) ⇒
-              val (algorithmName :: args) = xs
-              mechanism(algorithmName, args: _*)
-            case None ⇒
-              throw new IllegalStateException(s"Unable to find registered signature mechanism for ${mechanismIdentifier}.")
-          }
-        case Nil ⇒
-          Signature.NoSignature
-      }
-      location -> parameters
-    }
-    XGraphMarker.Signature(acquireSetting, Some(Map(freezeSettings: _*)))
-  }
+  def signature: XGraphMarker.Signature =
+    serializationSettings(_.signature, (s, v) ⇒ s.copy(signature = Some(v))) { signatureLoad() }
   /** Store signature settings to java.util.Properties. */
   def signature_=(settings: XGraphMarker.Signature) = graphPropertiesUpdate { p ⇒
     // acquire
@@ -256,6 +170,55 @@ trait SerializationSpecific {
     }
   }
 
+  /** Load digest settings. */
+  protected def digestLoad(): XGraphMarker.Digest = graphProperties { p ⇒
+    // acquire
+    val acquireSetting = p.getProperty(GraphMarker.fieldDigestAcquire) match {
+      case "required" ⇒ Some(true)
+      case "optional" ⇒ Some(false)
+      case _ ⇒ None
+    }
+    // freeze
+    val URIArgumentsLength = Option(p.getProperty(GraphMarker.fieldDigestFreeze)) match {
+      case Some(length) if length == "0" ⇒
+        return XGraphMarker.Digest(acquireSetting, Some(Map()))
+      case Some(length) ⇒
+        length.toInt
+      case None ⇒
+        return XGraphMarker.Digest(acquireSetting, None)
+    }
+    if (URIArgumentsLength < 0)
+      throw new IllegalStateException("Digest URI arguments length must be greater than zero.")
+    val URIArguments = for (i ← 0 until URIArgumentsLength)
+      yield p.getProperty(s"${GraphMarker.fieldDigestFreeze}_${i}") match {
+      case null ⇒ throw new IllegalStateException("There is 'null' value in digest URI argument.")
+      case location ⇒ (i, new URI(location))
+    }
+    val freezeSettings = for ((i, location) ← URIArguments) yield {
+      val argumentsLength = Option(p.getProperty(s"${GraphMarker.fieldDigestFreeze}_${i}_0")).map(_.toInt).getOrElse(0)
+      if (argumentsLength < 0)
+        throw new IllegalStateException(s"Digest arguments length for '${location}' must be greater than zero.")
+      val arguments = for (n ← (1 to argumentsLength).toList)
+        yield p.getProperty(s"${GraphMarker.fieldDigestFreeze}_${i}_${n}") match {
+        case null ⇒ throw new IllegalStateException("There is 'null' value in digest argument.")
+        case argument ⇒ argument
+      }
+      val parameters = arguments match {
+        case mechanismIdentifier :: xs ⇒
+          Digest.perIdentifier.find(_._1.name == mechanismIdentifier) match {
+            case Some((identifier, mechanism)) ⇒
+              val (algorithmName :: args) = xs
+              mechanism(algorithmName, args: _*)
+            case None ⇒
+              throw new IllegalStateException(s"Unable to find registered digest mechanism for ${mechanismIdentifier}.")
+          }
+        case Nil ⇒
+          Digest.NoDigest
+      }
+      location -> parameters
+    }
+    XGraphMarker.Digest(acquireSetting, Some(Map(freezeSettings: _*)))
+  }
   /** Load encryption settings. */
   protected def encryptionLoad(field: String, typeName: String): XGraphMarker.Encryption = graphProperties { p ⇒
     lazy val typeNameTitle = typeName.capitalize
@@ -278,9 +241,14 @@ trait SerializationSpecific {
         case None ⇒ throw new IllegalStateException(s"Unable to find name of the ${typeName} encryption algorithm.")
       }
       val key = Option(p.getProperty(s"${field}_${i}_key")).map { encBase64Bytes ⇒
-        val secretKey = ID.thisSecretEncryptionKey
-        val encBytes = Base64.decode(encBase64Bytes)
-        new String(KeyRing.decrypt(secretKey, KeyRing.defaultPassPhrase)(encBytes), io.Codec.UTF8.charSet)
+        val keys = state.unsafe.serializationKeys
+        keys.get(encBase64Bytes) getOrElse {
+          val secretKey = ID.thisSecretEncryptionKey
+          val encBytes = Base64.decode(encBase64Bytes)
+          val key = new String(KeyRing.decrypt(secretKey, KeyRing.defaultPassPhrase)(encBytes), io.Codec.UTF8.charSet)
+          keys(encBase64Bytes) = key
+          key
+        }
       }
       val parameters = Encryption.perIdentifier.find(_._1.name == name) match {
         case Some((identifier, encryption)) ⇒
@@ -298,34 +266,102 @@ trait SerializationSpecific {
     }
     XGraphMarker.Encryption(Map(encryptionSettings: _*))
   }
-  /** Store encryption settings. */
-  protected def encryptionStore(settings: XGraphMarker.Encryption, field: String, typeName: String): Unit = graphPropertiesUpdate { p ⇒
-    p.stringPropertyNames().asScala.filter(_.startsWith(field)).foreach(p.remove)
-    if (settings.encryption.isEmpty) {
-      p.setProperty(field, 0.toString)
-    } else {
-      p.setProperty(field, settings.encryption.size.toString)
-      var index = 0
-      settings.encryption.foreach {
-        case (uri, parameters) ⇒
-          p.setProperty(s"${field}_${index}", uri.toString())
-          p.setProperty(s"${field}_${index}_name", parameters.encryption.identifier.name)
-          parameters.key.foreach { key ⇒
-            val publicKey = ID.thisPublicEncryptionKey
-            val encBytes = KeyRing.encrypt(publicKey)(key.getBytes(io.Codec.UTF8.charSet))
-            val encBase64Bytes = Base64.encode(encBytes)
-            p.setProperty(s"${field}_${index}_key", new String(encBase64Bytes, io.Codec.UTF8.charSet))
-          }
-          // store arguments
-          val arguments = parameters.arguments
-          p.setProperty(s"${field}_${index}_0", arguments.size.toString)
-          var subindex = 1
-          arguments.foreach { argument ⇒
-            p.setProperty(s"${field}_${index}_${subindex}", argument)
-            subindex += 1
+  /** Load signature settings. */
+  protected def signatureLoad(): XGraphMarker.Signature = graphProperties { p ⇒
+    // acquire
+    val acquireSetting = p.getProperty(GraphMarker.fieldSignatureAcquire) match {
+      case null ⇒ None
+      case validatorId ⇒ Some(UUID.fromString(validatorId))
+    }
+    // freeze
+    val URIArgumentsLength = Option(p.getProperty(GraphMarker.fieldSignatureFreeze)) match {
+      case Some(length) if length == "0" ⇒
+        return XGraphMarker.Signature(acquireSetting, Some(Map()))
+      case Some(length) ⇒
+        length.toInt
+      case None ⇒
+        return XGraphMarker.Signature(acquireSetting, None)
+    }
+    if (URIArgumentsLength < 0)
+      throw new IllegalStateException("Signature URI arguments length must be greater than zero.")
+    val URIArguments = for (i ← 0 until URIArgumentsLength)
+      yield p.getProperty(s"${GraphMarker.fieldSignatureFreeze}_${i}") match {
+      case null ⇒ throw new IllegalStateException("There is 'null' value in signature URI argument.")
+      case location ⇒ (i, new URI(location))
+    }
+    val freezeSettings = for ((i, location) ← URIArguments) yield {
+      val argumentsLength = Option(p.getProperty(s"${GraphMarker.fieldSignatureFreeze}_${i}_0")).map(_.toInt).getOrElse(0)
+      if (argumentsLength < 0)
+        throw new IllegalStateException(s"Signature arguments length for '${location}' must be greater than zero.")
+      val arguments = for (n ← (1 to argumentsLength).toList)
+        yield p.getProperty(s"${GraphMarker.fieldSignatureFreeze}_${i}_${n}") match {
+        case null ⇒ throw new IllegalStateException("There is 'null' value in signature argument.")
+        case argument ⇒ argument
+      }
+      val parameters = arguments match {
+        case mechanismIdentifier :: xs ⇒
+          Signature.perIdentifier.find(_._1.name == mechanismIdentifier) match {
+            case Some((identifier, mechanism)) ⇒
+              val (algorithmName :: args) = xs
+              mechanism(algorithmName, args: _*)
+            case None ⇒
+              throw new IllegalStateException(s"Unable to find registered signature mechanism for ${mechanismIdentifier}.")
           }
-          index += 1
+        case Nil ⇒
+          Signature.NoSignature
+      }
+      location -> parameters
+    }
+    XGraphMarker.Signature(acquireSetting, Some(Map(freezeSettings: _*)))
+  }
+  /** Get cached serialization setting or load it. */
+  protected def serializationSettings[A](get: GraphMarker.SerializationSettings ⇒ Option[A],
+    set: (GraphMarker.SerializationSettings, A) ⇒ GraphMarker.SerializationSettings)(load: ⇒ A): A = {
+    val cache = state.unsafe.serializationSettings
+    val settings = cache.get
+    get(settings) getOrElse {
+      val value = load
+      var current = cache.get
+      // Store value only if graph properties are not changed while loading.
+      while (current.version == settings.version && get(current).isEmpty && !cache.compareAndSet(current, set(current, value)))
+        current = cache.get
+      value
+    }
+  }
+  /** Store encryption settings. */
+  protected def encryptionStore(settings: XGraphMarker.Encryption, field: String, typeName: String): Unit = {
+    // Encrypted key -> plain key. Seeded after graphPropertiesUpdate since it invalidates the cache.
+    val keys = mutable.HashMap[String, String]()
+    graphPropertiesUpdate { p ⇒
+      p.stringPropertyNames().asScala.filter(_.startsWith(field)).foreach(p.remove)
+      if (settings.encryption.isEmpty) {
+        p.setProperty(field, 0.toString)
+      } else {
+        p.setProperty(field, settings.encryption.size.toString)
+        var index = 0
+        settings.encryption.foreach {
+          case (uri, parameters) ⇒
+            p.setProperty(s"${field}_${index}", uri.toString())
+            p.setProperty(s"${field}_${index}_name", parameters.encryption.identifier.name)
+            parameters.key.foreach { key ⇒
+              val publicKey = ID.thisPublicEncryptionKey
+              val encBytes = KeyRing.encrypt(publicKey)(key.getBytes(io.Codec.UTF8.charSet))
+              val encBase64 = new String(Base64.encode(encBytes), io.Codec.UTF8.charSet)
+              keys(encBase64) = key
+              p.setProperty(s"${field}_${index}_key", encBase64)
+            }
+            // store arguments
+            val arguments = parameters.arguments
+            p.setProperty(s"${field}_${index}_0", arguments.size.toString)
+            var subindex = 1
+            arguments.foreach { argument ⇒
+              p.setProperty(s"${field}_${index}_${subindex}", argument)
+              subindex += 1
+            }
+            index += 1
+        }
       }
     }
+    state.unsafe.serializationKeys ++= keys
   }
 }
@@ -75,11 +75,9 @@ class AES extends XEncryption {
   }
   /** Decrypt data. */
   def decrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case AES.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ AES.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 128).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -92,11 +90,9 @@ class AES extends XEncryption {
   }
   /** Decrypt input stream. */
   def decrypt(inputStream: InputStream, parameters: XEncryption.Parameters): InputStream = parameters match {
-    case AES.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ AES.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 128).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherInputStream(inputStream, cipher)
     case _ ⇒
@@ -104,11 +100,9 @@ class AES extends XEncryption {
   }
   /** Encrypt data. */
   def encrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case AES.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ AES.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 128).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -121,11 +115,9 @@ class AES extends XEncryption {
   }
   /** Encrypt output stearm. */
   def encrypt(outputStream: OutputStream, parameters: XEncryption.Parameters): OutputStream = parameters match {
-    case AES.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ AES.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 128).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherOutputStream(outputStream, cipher)
     case _ ⇒
@@ -156,6 +148,12 @@ object AES {
       throw new IllegalArgumentException("Encryption key is not defined")
     /** Encryption instance. */
     lazy val encryption = Encryption.perIdentifier(Identifier).asInstanceOf[AES]
+    /** Derived cipher parameters, PKCS12 key derivation runs only once per instance. */
+    lazy val derivedParameters = {
+      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
+      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.get.toCharArray()), salt, AES.iterationCount)
+      pGen.generateDerivedParameters(keyLength.length, 128).asInstanceOf[ParametersWithIV]
+    }
 
     /** AES encryption parameters as sequence of strings. */
     val arguments: Seq[String] = Seq(keyLength.length.toString, new String(Base64.encode(salt), io.Codec.UTF8.charSet))
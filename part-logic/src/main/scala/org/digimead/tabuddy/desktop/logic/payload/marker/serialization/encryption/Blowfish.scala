@@ -72,11 +72,9 @@ class Blowfish extends XEncryption {
   }
   /** Decrypt data. */
   def decrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case Blowfish.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ Blowfish.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new BlowfishEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -89,11 +87,9 @@ class Blowfish extends XEncryption {
   }
   /** Decrypt input stream. */
   def decrypt(inputStream: InputStream, parameters: XEncryption.Parameters): InputStream = parameters match {
-    case Blowfish.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ Blowfish.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new BlowfishEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherInputStream(inputStream, cipher)
     case _ ⇒
@@ -101,11 +97,9 @@ class Blowfish extends XEncryption {
   }
   /** Encrypt data. */
   def encrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case Blowfish.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ Blowfish.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new BlowfishEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -118,11 +112,9 @@ class Blowfish extends XEncryption {
   }
   /** Encrypt output stearm. */
   def encrypt(outputStream: OutputStream, parameters: XEncryption.Parameters): OutputStream = parameters match {
-    case Blowfish.Parameters(Some(key), strength, salt) ⇒
+    case parameters @ Blowfish.Parameters(Some(_), _, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new BlowfishEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(strength.length, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherOutputStream(outputStream, cipher)
     case _ ⇒
@@ -150,6 +142,12 @@ object Blowfish {
       throw new IllegalArgumentException("Encryption key is not defined")
     /** Encryption instance. */
     lazy val encryption = Encryption.perIdentifier(Identifier).asInstanceOf[Blowfish]
+    /** Derived cipher parameters, PKCS12 key derivation runs only once per instance. */
+    lazy val derivedParameters = {
+      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
+      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.get.toCharArray()), salt, AES.iterationCount)
+      pGen.generateDerivedParameters(keyLength.length, 64).asInstanceOf[ParametersWithIV]
+    }
 
     /** Blowfish encryption parameters as sequence of strings. */
     val arguments: Seq[String] = Seq(keyLength.length.toString, new String(Base64.encode(salt), io.Codec.UTF8.charSet))
@@ -72,11 +72,9 @@ class DES extends XEncryption {
   }
   /** Decrypt data. */
   def decrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case DES.Parameters(Some(key), DES.StrengthSimple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthSimple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(64, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -84,11 +82,9 @@ class DES extends XEncryption {
       val result = new Array[Byte](resultLength)
       System.arraycopy(buffer, 0, result, 0, result.length)
       result
-    case DES.Parameters(Some(key), DES.StrengthTriple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthTriple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESedeEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(192, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -101,18 +97,14 @@ class DES extends XEncryption {
   }
   /** Decrypt input stream. */
   def decrypt(inputStream: InputStream, parameters: XEncryption.Parameters): InputStream = parameters match {
-    case DES.Parameters(Some(key), DES.StrengthSimple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthSimple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(64, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherInputStream(inputStream, cipher)
-    case DES.Parameters(Some(key), DES.StrengthTriple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthTriple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESedeEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(192, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherInputStream(inputStream, cipher)
     case _ ⇒
@@ -120,11 +112,9 @@ class DES extends XEncryption {
   }
   /** Encrypt data. */
   def encrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case DES.Parameters(Some(key), DES.StrengthSimple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthSimple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(64, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -132,11 +122,9 @@ class DES extends XEncryption {
       val result = new Array[Byte](resultLength)
       System.arraycopy(buffer, 0, result, 0, result.length)
       result
-    case DES.Parameters(Some(key), DES.StrengthTriple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthTriple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESedeEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(192, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -149,18 +137,14 @@ class DES extends XEncryption {
   }
   /** Encrypt output stearm. */
   def encrypt(outputStream: OutputStream, parameters: XEncryption.Parameters): OutputStream = parameters match {
-    case DES.Parameters(Some(key), DES.StrengthSimple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthSimple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(64, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherOutputStream(outputStream, cipher)
-    case DES.Parameters(Some(key), DES.StrengthTriple, salt) ⇒
+    case parameters @ DES.Parameters(Some(_), DES.StrengthTriple, _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new DESedeEngine))
-      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, DES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(192, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherOutputStream(outputStream, cipher)
     case _ ⇒
@@ -191,6 +175,12 @@ object DES {
       throw new IllegalArgumentException("Encryption key is not defined")
     /** Encryption instance. */
     lazy val encryption = Encryption.perIdentifier(Identifier).asInstanceOf[DES]
+    /** Derived cipher parameters, PKCS12 key derivation runs only once per instance. */
+    lazy val derivedParameters = {
+      val pGen = new PKCS12ParametersGenerator(new SHA1Digest())
+      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.get.toCharArray()), salt, DES.iterationCount)
+      pGen.generateDerivedParameters(if (strength.triple) 192 else 64, 64).asInstanceOf[ParametersWithIV]
+    }
 
     /** DES encryption parameters as sequence of strings. */
     val arguments: Seq[String] = Seq(strength.triple.toString, new String(Base64.encode(salt), io.Codec.UTF8.charSet))
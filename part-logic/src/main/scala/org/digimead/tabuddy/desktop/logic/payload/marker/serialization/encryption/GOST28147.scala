@@ -73,11 +73,9 @@ class GOST28147 extends XEncryption {
   }
   /** Decrypt data. */
   def decrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case GOST28147.Parameters(Some(key), salt) ⇒
+    case parameters @ GOST28147.Parameters(Some(_), _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new GOST28147Engine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(256, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -90,11 +88,9 @@ class GOST28147 extends XEncryption {
   }
   /** Decrypt input stream. */
   def decrypt(inputStream: InputStream, parameters: XEncryption.Parameters): InputStream = parameters match {
-    case GOST28147.Parameters(Some(key), salt) ⇒
+    case parameters @ GOST28147.Parameters(Some(_), _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new GOST28147Engine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(256, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(false, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherInputStream(inputStream, cipher)
     case _ ⇒
@@ -102,11 +98,9 @@ class GOST28147 extends XEncryption {
   }
   /** Encrypt data. */
   def encrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case GOST28147.Parameters(Some(key), salt) ⇒
+    case parameters @ GOST28147.Parameters(Some(_), _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new GOST28147Engine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(256, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       val buffer = new Array[Byte](cipher.getOutputSize(data.length))
       var resultLength = cipher.processBytes(data, 0, data.length, buffer, 0)
@@ -119,11 +113,9 @@ class GOST28147 extends XEncryption {
   }
   /** Encrypt output stearm. */
   def encrypt(outputStream: OutputStream, parameters: XEncryption.Parameters): OutputStream = parameters match {
-    case GOST28147.Parameters(Some(key), salt) ⇒
+    case parameters @ GOST28147.Parameters(Some(_), _) ⇒
       val cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new GOST28147Engine))
-      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
-      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.toCharArray()), salt, AES.iterationCount)
-      val paramsWithIV = pGen.generateDerivedParameters(256, 64).asInstanceOf[ParametersWithIV]
+      val paramsWithIV = parameters.derivedParameters
       cipher.init(true, new ParametersWithRandom(paramsWithIV, KeyRing.random))
       new CipherOutputStream(outputStream, cipher)
     case _ ⇒
@@ -152,6 +144,12 @@ object GOST28147 {
       throw new IllegalArgumentException("Encryption key is not defined")
     /** Encryption instance. */
     lazy val encryption = Encryption.perIdentifier(Identifier).asInstanceOf[GOST28147]
+    /** Derived cipher parameters, PKCS12 key derivation runs only once per instance. */
+    lazy val derivedParameters = {
+      val pGen = new PKCS12ParametersGenerator(new SHA256Digest())
+      pGen.init(PBEParametersGenerator.PKCS12PasswordToBytes(key.get.toCharArray()), salt, AES.iterationCount)
+      pGen.generateDerivedParameters(256, 64).asInstanceOf[ParametersWithIV]
+    }
 
     /** GOST28147 encryption parameters as sequence of strings. */
     val arguments: Seq[String] = Seq(new String(Base64.encode(salt), io.Codec.UTF8.charSet))
@@ -45,6 +45,7 @@ package org.digimead.tabuddy.desktop.logic.payload.marker.serialization.encrypti
 
 import com.google.common.io.BaseEncoding
 import java.io.{ InputStream, OutputStream }
+import java.nio.ByteBuffer
 import org.bouncycastle.crypto.{ CipherParameters, DataLengthException, OutputLengthException, StreamCipher }
 import org.bouncycastle.crypto.io.{ CipherInputStream, CipherOutputStream }
 import org.digimead.tabuddy.desktop.logic.payload.marker.serialization.encryption.api.XEncryption
@@ -63,29 +64,33 @@ class XOR extends XEncryption {
   }
   /** Decrypt data. */
   def decrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case XOR.Parameters(Some(key)) ⇒
-      xorWithKey(data, key.getBytes(io.Codec.UTF8.charSet))
+    case parameters @ XOR.Parameters(Some(_)) ⇒
+      val out = new Array[Byte](data.length)
+      XOR.process(data, 0, data.length, out, 0, parameters.keyBytes, 0)
+      out
     case _ ⇒
       throw new IllegalArgumentException("Incorrect parameters " + parameters)
   }
   /** Decrypt input stream. */
   def decrypt(inputStream: InputStream, parameters: XEncryption.Parameters): InputStream = parameters match {
-    case XOR.Parameters(Some(key)) ⇒
-      new CipherInputStream(inputStream, new XStreamCipher(key.getBytes(io.Codec.UTF8.charSet)))
+    case parameters @ XOR.Parameters(Some(_)) ⇒
+      new CipherInputStream(inputStream, new XOR.XStreamCipher(parameters.keyBytes))
     case _ ⇒
       throw new IllegalArgumentException("Incorrect parameters " + parameters)
   }
   /** Encrypt data. */
   def encrypt(data: Array[Byte], parameters: XEncryption.Parameters): Array[Byte] = parameters match {
-    case XOR.Parameters(Some(key)) ⇒
-      xorWithKey(data, key.getBytes(io.Codec.UTF8.charSet))
+    case parameters @ XOR.Parameters(Some(_)) ⇒
+      val out = new Array[Byte](data.length)
+      XOR.process(data, 0, data.length, out, 0, parameters.keyBytes, 0)
+      out
     case _ ⇒
       throw new IllegalArgumentException("Incorrect parameters " + parameters)
   }
   /** Encrypt output stearm. */
   def encrypt(outputStream: OutputStream, parameters: XEncryption.Parameters): OutputStream = parameters match {
-    case XOR.Parameters(Some(key)) ⇒
-      new CipherOutputStream(outputStream, new XStreamCipher(key.getBytes(io.Codec.UTF8.charSet)))
+    case parameters @ XOR.Parameters(Some(_)) ⇒
+      new CipherOutputStream(outputStream, new XOR.XStreamCipher(parameters.keyBytes))
     case _ ⇒
       throw new IllegalArgumentException("Incorrect parameters " + parameters)
   }
@@ -94,40 +99,6 @@ class XOR extends XEncryption {
   /** Convert to string. */
   def toString(data: Array[Byte]): String = BaseEncoding.base64().encode(data)
 
-  /** XOR data. */
-  protected def xorWithKey(a: Array[Byte], key: Array[Byte], shift: Int = 0): Array[Byte] = {
-    val out = new Array[Byte](a.length)
-    for (i ← 0 until a.length)
-      out(i) = (a(i) ^ key((i + shift) % key.length)).toByte
-    out
-  }
-
-  /**
-   * XOR Decrypt StreamCipher
-   */
-  class XStreamCipher(key: Array[Byte]) extends StreamCipher {
-    /** Key shift. */
-    var shift = 0
-
-    /** Initialise the cipher. */
-    def init(forEncryption: Boolean, params: CipherParameters) {}
-    /** Return the name of the algorithm the cipher implements. */
-    def getAlgorithmName() = "Base64"
-    /** Encrypt/decrypt a single byte returning the result. */
-    def returnByte(in: Byte): Byte = xorWithKey(Array(in), key).head
-    /** Process a block of bytes from in putting the result into out. */
-    def processBytes(in: Array[Byte], inOff: Int, len: Int, out: Array[Byte], outOff: Int): Int = synchronized {
-      if ((inOff + len) > in.length)
-        throw new DataLengthException("Input buffer too short")
-      if ((outOff + len) > out.length)
-        throw new OutputLengthException("Output buffer too short")
-      System.arraycopy(xorWithKey(in.drop(inOff).take(len), key, shift), 0, out, outOff, len)
-      shift = (shift + len) % key.length
-      len
-    }
-    /** Reset the cipher. */
-    def reset() {}
-  }
 }
 
 object XOR {
@@ -138,6 +109,41 @@ object XOR {
       case _ ⇒ throw new IllegalStateException("XOR encryption is not available.")
     }
 
+  /** XOR bytes of the in array with the key starting from the key shift and put the result into out, returns the next key shift. */
+  def process(in: Array[Byte], inOff: Int, len: Int, out: Array[Byte], outOff: Int, key: Array[Byte], shift: Int): Int = {
+    var i = 0
+    var k = shift
+    while (i < len) {
+      out(outOff + i) = (in(inOff + i) ^ key(k)).toByte
+      k += 1
+      if (k == key.length) k = 0
+      i += 1
+    }
+    k
+  }
+  /**
+   * XOR remaining bytes of the in buffer with the key starting from the key shift and put the result into out,
+   * returns the next key shift. Buffers may be direct and may be the same buffer.
+   */
+  def process(in: ByteBuffer, out: ByteBuffer, key: Array[Byte], shift: Int): Int = {
+    val len = in.remaining()
+    if (len > out.remaining())
+      throw new OutputLengthException("Output buffer too short")
+    val inOff = in.position()
+    val outOff = out.position()
+    var i = 0
+    var k = shift
+    while (i < len) {
+      out.put(outOff + i, (in.get(inOff + i) ^ key(k)).toByte)
+      k += 1
+      if (k == key.length) k = 0
+      i += 1
+    }
+    in.position(inOff + len)
+    out.position(outOff + len)
+    k
+  }
+
   /**
    * XOR encryption parameters.
    */
@@ -146,11 +152,50 @@ object XOR {
       throw new IllegalArgumentException("Encryption key is not defined")
     /** Encryption instance. */
     lazy val encryption = Encryption.perIdentifier(Identifier).asInstanceOf[XOR]
+    /** Key bytes. */
+    lazy val keyBytes = key.get.getBytes(io.Codec.UTF8.charSet)
 
     /** XOR parameters as sequence of strings. */
     val arguments: Seq[String] = Seq.empty
   }
 
+  /**
+   * XOR StreamCipher that processes bytes in place without intermediate buffers.
+   * Instance is not thread safe, as any other StreamCipher.
+   */
+  class XStreamCipher(key: Array[Byte]) extends StreamCipher {
+    /** Key shift. */
+    protected var shift = 0
+
+    /** Initialise the cipher. */
+    def init(forEncryption: Boolean, params: CipherParameters) {}
+    /** Return the name of the algorithm the cipher implements. */
+    def getAlgorithmName() = "XOR"
+    /** Encrypt/decrypt a single byte returning the result. */
+    def returnByte(in: Byte): Byte = {
+      val result = (in ^ key(shift)).toByte
+      shift += 1
+      if (shift == key.length) shift = 0
+      result
+    }
+    /** Process a block of bytes from in putting the result into out. */
+    def processBytes(in: Array[Byte], inOff: Int, len: Int, out: Array[Byte], outOff: Int): Int = {
+      if ((inOff + len) > in.length)
+        throw new DataLengthException("Input buffer too short")
+      if ((outOff + len) > out.length)
+        throw new OutputLengthException("Output buffer too short")
+      shift = process(in, inOff, len, out, outOff, key, shift)
+      len
+    }
+    /** Process remaining bytes from in buffer putting the result into out buffer. */
+    def processBytes(in: ByteBuffer, out: ByteBuffer): Int = {
+      val len = in.remaining()
+      shift = process(in, out, key, shift)
+      len
+    }
+    /** Reset the cipher. */
+    def reset() { shift = 0 }
+  }
   /**
    * XOR encryption identifier.
    */
@@ -192,13 +192,16 @@ object Filter extends XLoggable {
   /** Update only modified view filters. */
   def save(marker: GraphMarker, filters: Set[Filter]) = marker.safeUpdate { state ⇒
     log.debug("Save view filter list for graph " + state.graph)
-    val oldFilters = App.execNGet { state.payload.viewFilters.values.toSeq }
     val newFilters = filters - allowAllFilter
-    val deleted = oldFilters.filterNot(oldFilter ⇒ newFilters.exists(compareDeep(_, oldFilter)))
-    val added = newFilters.filterNot(newFilter ⇒ oldFilters.exists(compareDeep(_, newFilter)))
+    val (deleted, added) = App.execNGet {
+      val oldFilters = state.payload.viewFilters.values.toSeq
+      val deleted = oldFilters.filterNot(oldFilter ⇒ newFilters.exists(compareDeep(_, oldFilter)))
+      val added = newFilters.filterNot(newFilter ⇒ oldFilters.exists(compareDeep(_, newFilter)))
+      deleted.foreach { filter ⇒ state.payload.viewFilters.remove(filter.id) }
+      (deleted, added)
+    }
     if (deleted.nonEmpty) {
       log.debug("Delete Set(%s)".format(deleted.mkString(", ")))
-      App.execNGet { deleted.foreach { filter ⇒ state.payload.viewFilters.remove(filter.id) } }
       deleted.foreach(remove(marker, _))
     }
     if (added.nonEmpty) {
@@ -198,13 +198,16 @@ object Sorting extends XLoggable {
   /** Update only modified view sortings */
   def save(marker: GraphMarker, sortings: Set[Sorting]) = marker.safeUpdate { state ⇒
     log.debug("Save view sorting list for graph " + state.graph)
-    val oldSortings = App.execNGet { state.payload.viewSortings.values.toSeq }
     val newSortings = sortings - simpleSorting
-    val deleted = oldSortings.filterNot(oldSorting ⇒ newSortings.exists(compareDeep(_, oldSorting)))
-    val added = newSortings.filterNot(newSorting ⇒ oldSortings.exists(compareDeep(_, newSorting)))
+    val (deleted, added) = App.execNGet {
+      val oldSortings = state.payload.viewSortings.values.toSeq
+      val deleted = oldSortings.filterNot(oldSorting ⇒ newSortings.exists(compareDeep(_, oldSorting)))
+      val added = newSortings.filterNot(newSorting ⇒ oldSortings.exists(compareDeep(_, newSorting)))
+      deleted.foreach { sorting ⇒ state.payload.viewSortings.remove(sorting.id) }
+      (deleted, added)
+    }
     if (deleted.nonEmpty) {
       log.debug("Delete Set(%s)".format(deleted.mkString(", ")))
-      App.execNGet { deleted.foreach { sorting ⇒ state.payload.viewSortings.remove(sorting.id) } }
       deleted.foreach(remove(marker, _))
     }
     if (added.nonEmpty) {
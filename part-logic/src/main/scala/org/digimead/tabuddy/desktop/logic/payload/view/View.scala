@@ -232,13 +232,16 @@ object View extends XLoggable {
   /** Update only modified view definitions. */
   def save(marker: GraphMarker, views: Set[View]) = marker.safeUpdate { state ⇒
     log.debug("Save view definition list for graph " + state.graph)
-    val oldViews = App.execNGet { state.payload.viewDefinitions.values.toSeq }
     val newViews = views - displayName
-    val deleted = oldViews.filterNot(oldView ⇒ newViews.exists(compareDeep(_, oldView)))
-    val added = newViews.filterNot(newView ⇒ oldViews.exists(compareDeep(_, newView)))
+    val (deleted, added) = App.execNGet {
+      val oldViews = state.payload.viewDefinitions.values.toSeq
+      val deleted = oldViews.filterNot(oldView ⇒ newViews.exists(compareDeep(_, oldView)))
+      val added = newViews.filterNot(newView ⇒ oldViews.exists(compareDeep(_, newView)))
+      deleted.foreach { view ⇒ state.payload.viewDefinitions.remove(view.id) }
+      (deleted, added)
+    }
     if (deleted.nonEmpty) {
       log.debug("Delete Set(%s)".format(deleted.mkString(", ")))
-      App.execNGet { deleted.foreach { view ⇒ state.payload.viewDefinitions.remove(view.id) } }
       deleted.foreach(remove(marker, _))
     }
     if (added.nonEmpty) {
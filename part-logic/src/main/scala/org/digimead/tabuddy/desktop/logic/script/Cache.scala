@@ -44,9 +44,13 @@
 package org.digimead.tabuddy.desktop.logic.script
 
 import com.google.common.cache.{ CacheBuilder, CacheLoader, LoadingCache, RemovalListener, RemovalNotification }
+import java.io.File
+import java.util.UUID
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
+import org.digimead.tabuddy.desktop.core.support.App
 import scala.language.implicitConversions
 import scala.util.DynamicVariable
 
@@ -62,7 +66,78 @@ class Cache {
     maximumSize(Cache.maxSize).
     expireAfterAccess(Cache.entryTTL, TimeUnit.SECONDS).
     removalListener(new Cache.ScriptRemovalListener).
+    recordStats().
     build(new Cache.ScriptLoader)
+  /** Persistent storage synchronization lock. */
+  protected val persistentLock = new Object
+
+  /**
+   * Get script container from the persistent storage.
+   * Class files are copied under the lock, so the entry can't be evicted in the middle.
+   */
+  def persistentLoad(unique: String): Option[Script.Container[_]] = {
+    val location = persistentLocation(unique)
+    if (location.isDirectory()) persistentLock.synchronized {
+      if (location.isDirectory()) {
+        location.setLastModified(System.currentTimeMillis())
+        val container = new Script.Container("Evaluator__" + unique, Script.getClass.getClassLoader())
+        val restored = try container.restore(location) catch {
+          case e: Throwable ⇒
+            Cache.log.warn(s"Unable to restore script container with key ${unique}: " + e.getMessage(), e)
+            false
+        }
+        if (restored)
+          Some(container)
+        else {
+          // Broken entry. Drop it and compile the script again.
+          container.clear()
+          persistentDelete(location)
+          None
+        }
+      } else
+        None
+    }
+    else
+      None
+  }
+  /** Store script container to the persistent storage. */
+  def persistentSave(unique: String, container: Script.Container[_]) = try {
+    val location = persistentLocation(unique)
+    val temporary = new File(Cache.persistentDirectory, "." + UUID.randomUUID() + ".tmp")
+    container.store(temporary)
+    persistentLock.synchronized {
+      if (location.exists() || !temporary.renameTo(location))
+        persistentDelete(temporary)
+      persistentEvict()
+    }
+  } catch {
+    case e: Throwable ⇒
+      Cache.log.error(s"Unable to store script container with key ${unique}: " + e.getMessage(), e)
+  }
+
+  /** Delete a file or a directory recursively. */
+  protected def persistentDelete(file: File): Unit = {
+    if (file.isDirectory())
+      Option(file.listFiles()).getOrElse(Array()).foreach(persistentDelete)
+    file.delete()
+  }
+  /** Remove the least recently used entries while the persistent storage is larger than the limit. */
+  protected def persistentEvict() {
+    val entries = Option(Cache.persistentDirectory.listFiles()).getOrElse(Array()).
+      filter(f ⇒ f.isDirectory() && !f.getName().startsWith(".")).map(f ⇒ (f, f.lastModified(), persistentSize(f))).sortBy(_._2)
+    var size = entries.map(_._3).sum
+    entries.takeWhile(_ ⇒ size > Cache.persistentSize).foreach {
+      case (entry, _, entrySize) ⇒
+        Cache.log.debug(s"Evict script container ${entry.getName()} from the persistent storage.")
+        persistentDelete(entry)
+        size -= entrySize
+    }
+  }
+  /** Get persistent location of the script container. */
+  protected def persistentLocation(unique: String) = new File(Cache.persistentDirectory, unique + "-" + Script.classPathFingerprint)
+  /** Get size of a file or a directory. */
+  protected def persistentSize(file: File): Long =
+    if (file.isDirectory()) Option(file.listFiles()).getOrElse(Array()).map(persistentSize).sum else file.length()
 }
 
 object Cache extends XLoggable {
@@ -75,6 +150,19 @@ object Cache extends XLoggable {
   def inner = DI.implementation
   /** Get Cache maximum size. */
   def maxSize = DI.maxSize
+  /** Number of script containers restored from the persistent storage. */
+  val persistentHits = new AtomicLong()
+  /** Number of script containers that are absent in the persistent storage. */
+  val persistentMisses = new AtomicLong()
+  /** Get persistent storage location. */
+  def persistentDirectory = {
+    val directory = DI.persistentDirectory
+    if (!directory.exists())
+      directory.mkdirs()
+    directory
+  }
+  /** Get persistent storage maximum size (in bytes). */
+  def persistentSize = DI.persistentSize
   /** Get cached or evaluate new script. */
   def withScript[T](unique: String)(f: ⇒ Script.Container[T]): Script.Container[T] =
     inner.evaluator.withValue(Some(() ⇒ f)) { inner.storage.get(unique).asInstanceOf[Script.Container[T]] }
@@ -86,10 +174,19 @@ object Cache extends XLoggable {
     def load(unique: String): Script.Container[_] = {
       Cache.log.debug("Looking up script container with key:" + unique)
       val evaluator = inner.evaluator.value.get // throw NoSuchElementException as expected
-      val container = evaluator()
-      if (container.className != "Evaluator__" + unique)
-        throw new IllegalArgumentException(s"Expect ${"Evaluator__" + unique} but found ${container.className}")
-      container
+      inner.persistentLoad(unique) match {
+        case Some(container) ⇒
+          Cache.log.debug("Restore script container from the persistent storage.")
+          persistentHits.incrementAndGet()
+          container
+        case None ⇒
+          persistentMisses.incrementAndGet()
+          val container = evaluator()
+          if (container.className != "Evaluator__" + unique)
+            throw new IllegalArgumentException(s"Expect ${"Evaluator__" + unique} but found ${container.className}")
+          inner.persistentSave(unique, container)
+          container
+      }
     }
   }
   /**
@@ -114,5 +211,9 @@ object Cache extends XLoggable {
     lazy val maxSize = injectOptional[Int]("Script.Cache.MaxSize") getOrElse 100
     /** Cache entry time to live (in seconds). */
     lazy val entryTTL = injectOptional[Long]("Script.Cache.TTL") getOrElse 3600L // 1h
+    /** Persistent storage location. */
+    lazy val persistentDirectory = injectOptional[File]("Script.Cache.Location") getOrElse new File(App.data, "scriptcache")
+    /** Persistent storage maximum size (in bytes). */
+    lazy val persistentSize = injectOptional[Long]("Script.Cache.PersistentSize") getOrElse 64L * 1024 * 1024 // 64MB
   }
 }
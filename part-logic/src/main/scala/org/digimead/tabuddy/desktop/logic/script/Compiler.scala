@@ -43,6 +43,7 @@
 
 package org.digimead.tabuddy.desktop.logic.script
 
+import java.util.concurrent.{ LinkedBlockingQueue, TimeUnit }
 import java.util.concurrent.atomic.AtomicInteger
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
@@ -52,7 +53,8 @@ import scala.tools.nsc.{ Global, Settings }
 import scala.tools.nsc.reporters.AbstractReporter
 
 /**
- * Thread safe compiler implementation with global lock.
+ * Thread safe compiler implementation with per instance lock.
+ * Use Compiler.Pool for concurrent compilation.
  */
 class Compiler(val settings: Settings) extends XLoggable {
   /** Compiler state. */
@@ -67,6 +69,7 @@ class Compiler(val settings: Settings) extends XLoggable {
   /** Compile scala code. */
   def apply(code: String, container: Script.Container[_], lineOffset: Int, verbose: Boolean): Unit = lock.synchronized {
     log.debug(s"Compile ${container.className}.")
+    settings.outputDirs.setSingleOutput(container.target)
     try {
       // if you're looking for the performance hit, it's 1/2 this line...
       this.lineOffset.set(lineOffset)
@@ -93,11 +96,66 @@ class Compiler(val settings: Settings) extends XLoggable {
       }
     } finally reporter.reset
   }
+  /** Compile trivial code to load compiler internals. */
+  def warmUp() {
+    val container = new Script.Container[Unit]("Compiler__WarmUp", getClass.getClassLoader())
+    try apply("class Compiler__WarmUp extends (() => Any) { def apply() = () }", container, 0, false)
+    finally container.clear()
+  }
 }
 
 object Compiler {
   /** Padding in verbose mode. */
   def codePad = DI.codePad
+  /** Maximum number of compiler instances. */
+  def poolSize = DI.poolSize
+
+  /**
+   * Bounded pool of compilers. Each compiler has its own settings and reporter.
+   */
+  class Pool(val size: Int, factory: () ⇒ Compiler) extends XLoggable {
+    /** Number of created compilers. */
+    protected val created = new AtomicInteger()
+    /** Idle compilers. */
+    protected val idle = new LinkedBlockingQueue[Compiler]()
+
+    /** Run f with an exclusive compiler. */
+    def apply[T](f: Compiler ⇒ T): T = {
+      val compiler = acquire()
+      try f(compiler) finally idle.offer(compiler)
+    }
+    /** Create and warm up the first compiler. The rest are created on demand. */
+    def warmUp() = if (created.get() == 0 && reserve()) {
+      val compiler = create()
+      try compiler.warmUp()
+      catch { case e: Throwable ⇒ log.error("Unable to warm up compiler: " + e.getMessage(), e) }
+      idle.offer(compiler)
+    }
+
+    /** Get idle compiler, create a new one or wait for release. */
+    protected def acquire(): Compiler = {
+      var compiler = idle.poll()
+      while (compiler == null)
+        if (reserve()) {
+          log.debug(s"Create compiler ${created.get()} of ${size}.")
+          compiler = create()
+        } else
+          // Recheck periodically since the slot is released if the creation of compiler fails.
+          compiler = idle.poll(1, TimeUnit.SECONDS)
+      compiler
+    }
+    /** Create a new compiler for the reserved slot or release the slot on failure. */
+    protected def create(): Compiler = try factory() catch {
+      case e: Throwable ⇒
+        created.decrementAndGet()
+        throw e
+    }
+    /** Reserve a slot for a new compiler. */
+    protected def reserve(): Boolean = {
+      val n = created.get()
+      if (n >= size) false else created.compareAndSet(n, n + 1) || reserve()
+    }
+  }
 
   /** Class that contains compilation logs and provides methods to issue information, warning and error messages. */
   class Reporter(val lineOffset: AtomicInteger, val settings: Settings) extends AbstractReporter {
@@ -133,5 +191,7 @@ object Compiler {
   private object DI extends XDependencyInjection.PersistentInjectable {
     /** Padding in verbose mode. */
     lazy val codePad = injectOptional[Int]("Script.Padding") getOrElse 5
+    /** Maximum number of compiler instances. */
+    lazy val poolSize = injectOptional[Int]("Script.Compiler.PoolSize") getOrElse math.max(1, math.min(Runtime.getRuntime().availableProcessors(), 4))
   }
 }
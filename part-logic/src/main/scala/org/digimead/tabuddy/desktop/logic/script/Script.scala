@@ -46,6 +46,7 @@ package org.digimead.tabuddy.desktop.logic.script
 import java.io.File
 import java.math.BigInteger
 import java.net.URI
+import java.nio.file.Files
 import java.security.MessageDigest
 import org.digimead.digi.lib.api.XDependencyInjection
 import org.digimead.digi.lib.log.api.XLoggable
@@ -54,7 +55,7 @@ import org.eclipse.core.runtime.FileLocator
 import org.osgi.framework.Bundle
 import scala.language.implicitConversions
 import scala.reflect.internal.util.AbstractFileClassLoader
-import scala.reflect.io.VirtualDirectory
+import scala.reflect.io.{ AbstractFile, VirtualDirectory }
 import scala.tools.nsc.Settings
 
 /**
@@ -63,16 +64,17 @@ import scala.tools.nsc.Settings
 class Script extends XLoggable {
   /** Evaluation class path. */
   lazy val classPath = buildClassPath(App.bundle(getClass))
-  /** Evaluation settings. */
-  lazy val settings = {
-    val settings = new Settings
-    settings.nowarnings.value = true // warnings are exceptions, so disable
-    settings.bootclasspath.value = classPath.mkString(File.pathSeparator)
-    settings.classpath.value = classPath.mkString(File.pathSeparator)
-    settings
+  /** Evaluation compilers. */
+  lazy val compilers = new Compiler.Pool(Compiler.poolSize, () ⇒ new Compiler(settings()))
+  /** Fingerprint of the evaluation class path, compiled bytecode is valid only against the same one. */
+  lazy val classPathFingerprint = {
+    val digest = MessageDigest.getInstance(Script.digestAlgorithm)
+    classPath.foreach { file ⇒
+      digest.update(file.getAbsolutePath().getBytes(io.Codec.UTF8.charSet))
+      digest.update(s"${file.lastModified()}:${file.length()}".getBytes(io.Codec.UTF8.charSet))
+    }
+    new BigInteger(1, digest.digest()).toString(36)
   }
-  /** Evaluation compiler. */
-  lazy val compiler = new Compiler(settings)
 
   /** Get compilation result. */
   def apply[T](script: String): Script.Container[T] =
@@ -96,9 +98,12 @@ class Script extends XLoggable {
     container
   }
   /** Compile script. */
-  def compile[T](script: String, classLoader: Script.Container[T], lineOffset: Int, verbose: Boolean) {
-    settings.outputDirs.setSingleOutput(classLoader.target)
-    compiler(script, classLoader, lineOffset, verbose) // throws an exception if something wrong
+  def compile[T](script: String, classLoader: Script.Container[T], lineOffset: Int, verbose: Boolean) =
+    compilers(_(script, classLoader, lineOffset, verbose)) // throws an exception if something wrong
+  /** Create and warm up the first evaluation compiler. */
+  def warmUp() {
+    log.debug("Warm up script compiler.")
+    compilers.warmUp()
   }
 
   /** Build array of files for all known bundles. */
@@ -144,6 +149,14 @@ class Script extends XLoggable {
       }
     }
   }
+  /** Create evaluation settings. */
+  protected def settings() = {
+    val settings = new Settings
+    settings.nowarnings.value = true // warnings are exceptions, so disable
+    settings.bootclasspath.value = classPath.mkString(File.pathSeparator)
+    settings.classpath.value = classPath.mkString(File.pathSeparator)
+    settings
+  }
   /** Wrap source code in a new class with an apply method.  */
   protected def wrapCodeInClass(className: String, code: String) =
     "class " + className + " extends (() => Any) {\n" +
@@ -153,8 +166,13 @@ class Script extends XLoggable {
 
 object Script {
   implicit def eval2implementation(s: Script.type): Script = s.inner
-  /** Digest implementation for unique script value generation. */
-  lazy val digest = MessageDigest.getInstance(digestAlgorithm)
+  /** Per thread digest implementation for unique script value generation. */
+  protected lazy val localDigest = new ThreadLocal[MessageDigest] {
+    override protected def initialValue() = MessageDigest.getInstance(digestAlgorithm)
+  }
+
+  /** Get digest implementation of the current thread. */
+  def digest = localDigest.get()
 
   /** Get digest algorithm for generation unique value. */
   def digestAlgorithm = DI.digestAlgorithm
@@ -166,6 +184,9 @@ object Script {
   /**
    * Class loader for finding classes compiled by Compiler.
    * After target.clear, this class loader will not be able to find old compiled classes.
+   *
+   * @param className name of the evaluator class
+   * @param parent parent class loader
    */
   class Container[T](val className: String, parent: ClassLoader)
     extends AbstractFileClassLoader(new VirtualDirectory("(memory)", None), parent) {
@@ -175,7 +196,35 @@ object Script {
       clearAssertionStatus()
     }
     /** Run compiled code. */
-    def run() = asContext(this.loadClass(className).getConstructor().newInstance().asInstanceOf[() ⇒ Any].apply().asInstanceOf[T])
+    def run() = {
+      asContext(this.loadClass(className).getConstructor().newInstance().asInstanceOf[() ⇒ Any].apply().asInstanceOf[T])
+    }
+    /** Store compilation results to the specific directory. */
+    def store(directory: File) = store(target, directory)
+    /** Restore compilation results from the specific directory. Returns false if there is no evaluator class. */
+    def restore(directory: File): Boolean = {
+      restore(directory, target)
+      target.lookupName(className + ".class", false) != null
+    }
+
+    /** Copy class files from the directory to the virtual one. */
+    protected def restore(from: File, to: AbstractFile): Unit = Option(from.listFiles()).getOrElse(Array()).foreach {
+      case directory if directory.isDirectory() ⇒
+        restore(directory, to.subdirectoryNamed(directory.getName()))
+      case file ⇒
+        val output = to.fileNamed(file.getName()).output
+        try output.write(Files.readAllBytes(file.toPath())) finally output.close()
+    }
+    /** Copy class files from the virtual directory to the real one. */
+    protected def store(from: AbstractFile, to: File): Unit = {
+      to.mkdirs()
+      from.iterator.foreach {
+        case directory if directory.isDirectory ⇒
+          store(directory, new File(to, directory.name))
+        case file ⇒
+          Files.write(new File(to, file.name).toPath(), file.toByteArray)
+      }
+    }
     /** Virtual directory with result of compilation. */
     def target = root.asInstanceOf[VirtualDirectory]
   }
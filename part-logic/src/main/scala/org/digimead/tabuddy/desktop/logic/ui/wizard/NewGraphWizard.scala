@@ -125,40 +125,42 @@ class NewGraphWizard extends Wizard with INewWizard with XLoggable {
               exchanger.exchange(null) match {
                 case Operation.Result.OK(Some(graph), message) ⇒
                   val marker = GraphMarker(graph)
-                  // containerEncryption
-                  val containerEncryptionArgument = containerEncryption match {
-                    case (EncryptionAdapter.Empty.identifier, _) ⇒ Map[URI, Encryption.Parameters]()
-                    case (identifier, Some(parameters)) ⇒ Map[URI, Encryption.Parameters](marker.graphPath.toURI() -> parameters)
-                    case (_, _) ⇒ Map[URI, Encryption.Parameters]()
+                  marker.batch {
+                    // containerEncryption
+                    val containerEncryptionArgument = containerEncryption match {
+                      case (EncryptionAdapter.Empty.identifier, _) ⇒ Map[URI, Encryption.Parameters]()
+                      case (identifier, Some(parameters)) ⇒ Map[URI, Encryption.Parameters](marker.graphPath.toURI() -> parameters)
+                      case (_, _) ⇒ Map[URI, Encryption.Parameters]()
+                    }
+                    marker.containerEncryption = XGraphMarker.Encryption(containerEncryptionArgument)
+                    // contentEncryption
+                    val contentEncryptionArgument = contentEncryption match {
+                      case (EncryptionAdapter.Empty.identifier, _) ⇒ Map[URI, Encryption.Parameters]()
+                      case (identifier, Some(parameters)) ⇒ Map[URI, Encryption.Parameters](marker.graphPath.toURI() -> parameters)
+                      case (_, _) ⇒ Map[URI, Encryption.Parameters]()
+                    }
+                    marker.contentEncryption = XGraphMarker.Encryption(contentEncryptionArgument)
+                    // digest
+                    val digestAquire = digestAcquireField
+                    val digestFreeze = digestFreezeField match {
+                      case (DigestAdapter.Empty.identifier, _) ⇒ None
+                      case (identifier, Some(parameters)) ⇒ Some(Map(marker.graphPath.toURI() -> parameters))
+                      case (_, _) ⇒ None
+                    }
+                    marker.digest = XGraphMarker.Digest(digestAcquireField, digestFreeze)
+                    // signature
+                    val signatureAquire = signatureAcquireField match {
+                      case NewGraphWizardPageOne.Acquire.Signature.SelectionRequired ⇒ None
+                      case NewGraphWizardPageOne.Acquire.Signature.Disabled ⇒ None
+                      case validator ⇒ Some(validator.id)
+                    }
+                    val signatureFreeze = signatureFreezeField match {
+                      case (SignatureAdapter.Empty.identifier, _) ⇒ None
+                      case (identifier, Some(parameters)) ⇒ Some(Map(marker.graphPath.toURI() -> parameters))
+                      case (_, _) ⇒ None
+                    }
+                    marker.signature = XGraphMarker.Signature(signatureAquire, signatureFreeze)
                   }
-                  marker.containerEncryption = XGraphMarker.Encryption(containerEncryptionArgument)
-                  // contentEncryption
-                  val contentEncryptionArgument = contentEncryption match {
-                    case (EncryptionAdapter.Empty.identifier, _) ⇒ Map[URI, Encryption.Parameters]()
-                    case (identifier, Some(parameters)) ⇒ Map[URI, Encryption.Parameters](marker.graphPath.toURI() -> parameters)
-                    case (_, _) ⇒ Map[URI, Encryption.Parameters]()
-                  }
-                  marker.contentEncryption = XGraphMarker.Encryption(contentEncryptionArgument)
-                  // digest
-                  val digestAquire = digestAcquireField
-                  val digestFreeze = digestFreezeField match {
-                    case (DigestAdapter.Empty.identifier, _) ⇒ None
-                    case (identifier, Some(parameters)) ⇒ Some(Map(marker.graphPath.toURI() -> parameters))
-                    case (_, _) ⇒ None
-                  }
-                  marker.digest = XGraphMarker.Digest(digestAcquireField, digestFreeze)
-                  // signature
-                  val signatureAquire = signatureAcquireField match {
-                    case NewGraphWizardPageOne.Acquire.Signature.SelectionRequired ⇒ None
-                    case NewGraphWizardPageOne.Acquire.Signature.Disabled ⇒ None
-                    case validator ⇒ Some(validator.id)
-                  }
-                  val signatureFreeze = signatureFreezeField match {
-                    case (SignatureAdapter.Empty.identifier, _) ⇒ None
-                    case (identifier, Some(parameters)) ⇒ Some(Map(marker.graphPath.toURI() -> parameters))
-                    case (_, _) ⇒ None
-                  }
-                  marker.signature = XGraphMarker.Signature(signatureAquire, signatureFreeze)
                   log.info(s"Operation completed successfully.")
                   marker
                 case Operation.Result.OK(None, message) ⇒
@@ -118,7 +118,7 @@ class Content @Inject() (val context: Context, parent: VComposite, @Named("style
     val success = for {
       id ← Option(id)
       marker ← graphMarker
-    } yield App.execNGet { marker.safeRead(_.payload.viewFilters.get(id)).map(table.setFilter) }
+    } yield App.execNGet { marker.safePayloadRead(_.viewFilters.get(id)).map(table.setFilter) }
     success.flatten match {
       case Some(_) ⇒
       case None if id != null ⇒
@@ -138,7 +138,7 @@ class Content @Inject() (val context: Context, parent: VComposite, @Named("style
     val success = for {
       id ← Option(id)
       marker ← graphMarker
-    } yield App.execNGet { marker.safeRead(_.payload.viewSortings.get(id)).map(table.setSorting) }
+    } yield App.execNGet { marker.safePayloadRead(_.viewSortings.get(id)).map(table.setSorting) }
     success.flatten match {
       case Some(_) ⇒
       case None if id != null ⇒
@@ -154,7 +154,7 @@ class Content @Inject() (val context: Context, parent: VComposite, @Named("style
     val success = for {
       id ← Option(id)
       marker ← graphMarker
-    } yield App.execNGet { marker.safeRead(_.payload.viewDefinitions.get(id)).map(table.setViewDefinition) }
+    } yield App.execNGet { marker.safePayloadRead(_.viewDefinitions.get(id)).map(table.setViewDefinition) }
     success.flatten match {
       case Some(_) ⇒
       case None if id != null ⇒
@@ -422,7 +422,7 @@ class Content @Inject() (val context: Context, parent: VComposite, @Named("style
       ActionElementNew.setEnabled(true)
       ActionElementEdit.setEnabled(false)
       ActionElementDelete.setEnabled(false)
-    } else if (proxy.getContent.exists(_ == item)) {
+    } else if (proxy.contains(item)) {
       getTextActiveElement.setText(element.toString)
       ActionElementNew.setEnabled(true)
       ActionElementEdit.setEnabled(true)
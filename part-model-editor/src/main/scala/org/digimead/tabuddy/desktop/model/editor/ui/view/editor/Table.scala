@@ -54,15 +54,12 @@ import org.digimead.tabuddy.desktop.core.support.App
 import org.digimead.tabuddy.desktop.core.support.WritableList
 import org.digimead.tabuddy.desktop.core.support.WritableValue
 import org.digimead.tabuddy.desktop.core.ui.support.TreeProxy
-import org.digimead.tabuddy.desktop.logic.comparator.AvailableComparators
-import org.digimead.tabuddy.desktop.logic.comparator.api.XComparator
-import org.digimead.tabuddy.desktop.logic.filter.AvailableFilters
-import org.digimead.tabuddy.desktop.logic.filter.api.XFilter
+import org.digimead.tabuddy.desktop.logic.comparator.CompositeComparator
+import org.digimead.tabuddy.desktop.logic.filter.CompositeFilter
 import org.digimead.tabuddy.desktop.logic.payload.{ ElementTemplate, PropertyType, TemplateProperty }
 import org.digimead.tabuddy.desktop.logic.payload.marker.GraphMarker
 import org.digimead.tabuddy.desktop.logic.payload.view.{ Filter, Sorting, View ⇒ ModelView }
-import org.digimead.tabuddy.desktop.logic.payload.view.api.{ XFilter ⇒ XViewFilter, XSorting }
-import org.digimead.tabuddy.desktop.model.editor.{ AnySRef, Default, Messages }
+import org.digimead.tabuddy.desktop.model.editor.{ Default, Messages }
 import org.digimead.tabuddy.model.element.Element
 import org.eclipse.core.databinding.observable.Observables
 import org.eclipse.core.databinding.observable.value.{ IValueChangeListener, ValueChangeEvent }
@@ -73,7 +70,7 @@ import org.eclipse.swt.SWT
 import org.eclipse.swt.events.{ DisposeEvent, DisposeListener, PaintEvent, PaintListener, SelectionAdapter, SelectionEvent }
 import org.eclipse.swt.graphics.{ Color, Font, Image, Point }
 import scala.annotation.migration
-import scala.collection.{ immutable, mutable, parallel }
+import scala.collection.{ immutable, mutable }
 import scala.collection.JavaConverters.{ asJavaIteratorConverter, seqAsJavaListConverter }
 import scala.concurrent.Future
 import scala.language.reflectiveCalls
@@ -189,8 +186,8 @@ class Table(protected[editor] val content: Content, style: Int)
   def removeViewDefinition() = App.execAsync { updateColumns(None) }
   /** Recreate table columns */
   def updateColumns(marker: GraphMarker): Unit =
-    updateColumns(marker.safeRead { state ⇒
-      content.getParent.getContext.flatMap(state.payload.getSelectedViewDefinition(_))
+    updateColumns(marker.safePayloadRead { payload ⇒
+      content.getParent.getContext.flatMap(payload.getSelectedViewDefinition(_))
     })
   /** Recreate table columns */
   def updateColumns(view: Option[ModelView]) {
@@ -264,10 +261,6 @@ class Table(protected[editor] val content: Content, style: Int)
     table.addPaintListener(onActiveListener)
     tableViewer.setComparator(sorting)
     tableViewer.setFilters(Array(filter))
-    proxyContentSorted.addChangeListener { _ ⇒
-      // reset cached sorting results on sorted content change
-      tableViewer.getComparator.asInstanceOf[Table.TableComparator].sorted = None
-    }
     // Add the dispose listener
     table.addDisposeListener(new DisposeListener {
       def widgetDisposed(e: DisposeEvent) {
@@ -354,7 +347,6 @@ class Table(protected[editor] val content: Content, style: Int)
   /** onActive callback */
   protected def onActive() {}
   protected[editor] def onSortingChanged() {
-    tableViewer.getComparator.asInstanceOf[Table.TableComparator].sorted = None
     tableViewer.refresh()
   }
 }
@@ -418,14 +410,18 @@ object Table extends XLoggable {
     /** Source listener. */
     protected lazy val sourceListener = source.addChangeListener { _ ⇒ eventsAggregator.value = System.currentTimeMillis() }
     /** User defined sorting. */
-    @volatile protected var userDefinedSorting = Seq.empty[(XSorting.Definition, PropertyType[AnyRef with java.io.Serializable], XComparator[XComparator.Argument], Option[XComparator.Argument])]
+    @volatile protected var userDefinedSorting = new CompositeComparator(Seq.empty)
     /** User defined sorting id. */
     @volatile protected var userDefinedSortingId = Option.empty[UUID]
+    /** Rank index of the target content (item -> position). */
+    @volatile protected var rankIndex = immutable.HashMap.empty[TreeProxy.Item, Int]
+    /** Target content of the rank index. */
+    @volatile protected var ranked = IndexedSeq.empty[TreeProxy.Item]
 
     /** Remove user defined sorting. */
     def clear() = lock.synchronized {
       if (userDefinedSortingId.nonEmpty) {
-        this.userDefinedSorting = Seq.empty
+        this.userDefinedSorting = new CompositeComparator(Seq.empty)
         userDefinedSortingId = None
         App.exec { eventsAggregator.value = System.currentTimeMillis() }
       }
@@ -437,6 +433,8 @@ object Table extends XLoggable {
       delayedObservable.dispose()
       source.removeChangeListener(eventsAggregatorListener)
     }
+    /** Get position of the item within the sorted target or -1. */
+    def rank(item: TreeProxy.Item): Int = rankIndex.getOrElse(item, -1)
     /** Init sorter. */
     def init() {
       App.assertEventThread()
@@ -448,18 +446,7 @@ object Table extends XLoggable {
     def set(userDefinedSorting: Sorting) = lock.synchronized {
       if (userDefinedSortingId != Some(userDefinedSorting.id)) {
         log.debug("Set user defined sorting to " + userDefinedSorting)
-        this.userDefinedSorting = userDefinedSorting.definitions.toSeq.flatMap { definition ⇒
-          val comparator = AvailableComparators.map.get(definition.comparator)
-          if (comparator.isEmpty)
-            log.error(s"Comparator for id ${definition.comparator} is not found")
-          val propertyType = PropertyType.container.get(definition.propertyType)
-          if (propertyType.isEmpty)
-            log.error(s"PropertyType for id ${definition.propertyType} is not found")
-          val argument = comparator.flatMap(c ⇒ c.stringToArgument(definition.argument))
-          comparator.flatMap(c ⇒ propertyType.map(ptype ⇒ (definition,
-            ptype.asInstanceOf[PropertyType[AnyRef with java.io.Serializable]],
-            c.asInstanceOf[XComparator[XComparator.Argument]], argument)))
-        }.reverse
+        this.userDefinedSorting = CompositeComparator(userDefinedSorting)
         userDefinedSortingId = Some(userDefinedSorting.id)
         App.exec {
           val ts = System.currentTimeMillis()
@@ -485,34 +472,20 @@ object Table extends XLoggable {
     protected def sort() {
       lock.synchronized { (userDefinedSortingId, userDefinedSorting) } match {
         case (Some(uuid), sortBy) ⇒
-          var iteration = App.execNGet { source.toIndexedSeq }
-          sortBy.foreach {
-            case ((definition, propertyType, comparator, argument)) ⇒
-              // iterate over sorting definitions
-              if (definition.direction)
-                iteration = iteration.sortWith { (a, b) ⇒
-                  comparator.compare[AnyRef with java.io.Serializable](
-                    definition.property,
-                    propertyType.asInstanceOf[comparator.ComparatorPropertyType[AnyRef with java.io.Serializable]],
-                    a.element, b.element,
-                    argument) < 0
-                }
-              else
-                iteration = iteration.sortWith { (a, b) ⇒
-                  comparator.compare[AnyRef with java.io.Serializable](
-                    definition.property,
-                    propertyType.asInstanceOf[comparator.ComparatorPropertyType[AnyRef with java.io.Serializable]],
-                    a.element, b.element,
-                    argument) >= 0
-                }
-          }
+          val iteration = sortBy.sort(App.execNGet { source.toIndexedSeq }, true)(_.element)
+          val rank = index(iteration)
           App.execNGet {
+            rankIndex = rank
+            ranked = iteration
             target.clear()
             target.addAll(iteration.asJava)
           }
           log.debug("Fill target with sorted (%s) content".format(uuid))
         case (None, _) ⇒
           App.execNGet {
+            val iteration = source.toIndexedSeq
+            rankIndex = index(iteration)
+            ranked = iteration
             target.clear()
             target.addAll(Lists.newArrayList[TreeProxy.Item](source.iterator.asJava: java.util.Iterator[TreeProxy.Item]))
           }
@@ -520,6 +493,22 @@ object Table extends XLoggable {
       }
       updateComplete()
     }
+    /** Update rank index for the new sequence of items. Only changed positions are updated. */
+    protected def index(items: IndexedSeq[TreeProxy.Item]): immutable.HashMap[TreeProxy.Item, Int] = {
+      val previous = ranked
+      var result = rankIndex
+      for (position ← 0 until items.length)
+        if (position >= previous.length || previous(position) != items(position))
+          result = result.updated(items(position), position)
+      // An item of the changed position that keeps the old rank is not in the new sequence.
+      for (position ← 0 until previous.length)
+        if (position >= items.length || previous(position) != items(position)) {
+          val item = previous(position)
+          if (result.get(item) == Some(position))
+            result = result - item
+        }
+      result
+    }
     /** Mark update as completed. */
     protected def updateComplete() = lock.synchronized {
       requestInProgress = false
@@ -534,30 +523,20 @@ object Table extends XLoggable {
   /** Filter that apply user rules */
   class FilterWithUserDefinedRules(content: WeakReference[Content]) extends ViewerFilter {
     /** User defined rules. */
-    var rules = Seq.empty[(XViewFilter.Rule, PropertyType[_ <: AnySRef], XFilter[_ <: XFilter.Argument], Option[_ <: XFilter.Argument])]
+    @volatile var rules = new CompositeFilter(Array.empty)
 
     /** Clear user defined filter. */
-    def clear() = rules = Nil
+    def clear() = rules = new CompositeFilter(Array.empty)
     override def select(viewer: Viewer, parentElement: Object, element: Object): Boolean = element match {
       case item: TreeProxy.Item ⇒
-        val view = viewer.asInstanceOf[TableViewer].getTable.getData.asInstanceOf[Content]
-        rules.isEmpty || rules.forall {
-          case ((rule, propertyType, filter, argument)) ⇒
-            val generic = filter.**
-            generic.filter(rule.property, propertyType.asInstanceOf[generic.FilterPropertyType[AnySRef]], item.element, argument)
-        }
+        rules(item.element)
       case unknown ⇒
         log.fatal("Unknown item '%s' with type '%s'".format(unknown, unknown.getClass()))
         true
     }
     /** Set user defined filter. */
     def set(userDefinedFilter: Filter) {
-      rules = userDefinedFilter.rules.toSeq.flatMap { rule ⇒
-        val filterInstance = AvailableFilters.map.get(rule.filter): Option[XFilter[_ <: XFilter.Argument]]
-        val propertyType = PropertyType.container.get(rule.propertyType): Option[PropertyType[_ <: AnyRef with java.io.Serializable]]
-        val argument = filterInstance.flatMap(f ⇒ f.stringToArgument(rule.argument))
-        filterInstance.flatMap(f ⇒ propertyType.map(ptype ⇒ (rule, ptype, f, argument)))
-      }
+      rules = CompositeFilter(userDefinedFilter)
     }
   }
   /** Filter empty rows from table (id row is not takes into consideration) */
@@ -598,8 +577,6 @@ object Table extends XLoggable {
     protected var columnVar = initialColumn
     /** The sort direction. */
     protected var directionVar = initialDirection
-    /** Sorted content by user defined sorter. */
-    protected[editor] var sorted: Option[parallel.immutable.ParVector[TreeProxy.Item]] = None
     updateActionResetSorting
 
     /** Active column getter. */
@@ -624,11 +601,10 @@ object Table extends XLoggable {
       val columnCount = viewer.asInstanceOf[TableViewer].getTable.getColumnCount()
 
       val rc: Int = if (column < 0) {
-        val items = sorted getOrElse {
-          sorted = table.get.map(_.proxyContentSorted.toVector.par)
-          sorted getOrElse parallel.immutable.ParVector.empty
+        table.get.map(_.proxyContentSorter) match {
+          case Some(sorter) ⇒ sorter.rank(item1).compareTo(sorter.rank(item2))
+          case None ⇒ 0
         }
-        items.indexOf(item1).compareTo(items.indexOf(item2))
       } else if (column < columnCount) {
         val columnId = viewer.asInstanceOf[TableViewer].getTable.getColumn(column).getData().asInstanceOf[String]
         if (columnId == Content.COLUMN_ID) {
@@ -642,8 +618,6 @@ object Table extends XLoggable {
       }
       if (directionVar) -rc else rc
     }
-    /** Reset cached sorted data. */
-    def reset() = sorted = None
     /** Switch comparator direction */
     def switchDirection() {
       directionVar = !directionVar